@@ -398,9 +398,12 @@ final class Arguments extends IdScriptableObject {
 	//   9. Perform DefinePropertyOrThrow(obj, "callee", PropertyDescriptor {[[Get]]: %ThrowTypeError%,
 	//      [[Set]]: %ThrowTypeError%, [[Enumerable]]: false, [[Configurable]]: false}).
 	void defineAttributesForStrictMode(Context cx) {
-		if (!cx.isStrictMode()) {
-			return;
+		if (cx.isStrictMode()) {
+			defineStrictAttributes(cx);
 		}
+	}
+
+	void defineStrictAttributes(Context cx) {
 		setGetterOrSetter(cx, "caller", 0, new ThrowTypeError("caller"), true);
 		setGetterOrSetter(cx, "caller", 0, new ThrowTypeError("caller"), false);
 		setGetterOrSetter(cx, "callee", 0, new ThrowTypeError("callee"), true);
@@ -211,21 +211,7 @@ public class ArrayLikeAbstractOperations {
 	public static ElementComparator getSortComparatorFromArguments(final Context cx, final Scriptable scope, final Object[] args) {
 		final Callable jsCompareFunction = ScriptRuntime.getValueFunctionAndThis(cx, args[0]);
 		final Scriptable funThis = cx.lastStoredScriptable();
-		final Object[] cmpBuf = new Object[2]; // Buffer for cmp arguments
-		return new ElementComparator((x, y) -> {
-			// This comparator is invoked only for non-undefined objects
-			cmpBuf[0] = x;
-			cmpBuf[1] = y;
-			Object ret = jsCompareFunction.call(cx, scope, funThis, cmpBuf);
-			double d = ScriptRuntime.toNumber(cx, ret);
-			int cmp = Double.compare(d, 0);
-			if (cmp < 0) {
-				return -1;
-			} else if (cmp > 0) {
-				return +1;
-			}
-			return 0;
-		});
+		return new ElementComparator(new FunctionComparator(cx, scope, jsCompareFunction, funThis));
 	}
 
 	// Comparators for the js_sort method. Putting them here lets us unit-test them better.
@@ -266,4 +252,56 @@ public class ArrayLikeAbstractOperations {
 			return child.compare(x, y);
 		}
 	}
+
+	/**
+	 * Comparator that is a script function of the form <code>(a, b) =&gt; a - b</code>
+	 * or <code>(a, b) =&gt; a.property - b.property</code>, or the reverse of either.
+	 * Sorting by the numeric keys gives the same result as calling the function.
+	 */
+	public record NumericSortKey(String property, boolean descending) {
+	}
+
+	public static final class FunctionComparator implements Comparator<Object> {
+		private final Context cx;
+		private final Scriptable scope;
+		private final Callable function;
+		private final Scriptable thisObj;
+		private final Object[] cmpBuf; // Buffer for cmp arguments
+		final NumericSortKey numericSortKey;
+
+		FunctionComparator(Context cx, Scriptable scope, Callable function, Scriptable thisObj) {
+			this.cx = cx;
+			this.scope = scope;
+			this.function = function;
+			this.thisObj = thisObj;
+			this.cmpBuf = new Object[2];
+
+			Callable target = function instanceof ArrowFunction arrow ? arrow.getTargetFunction() : function;
+			this.numericSortKey = target instanceof InterpretedFunction f ? Interpreter.getNumericSortKey(f.idata) : null;
+		}
+
+		@Override
+		public int compare(final Object x, final Object y) {
+			// This comparator is invoked only for non-undefined objects
+			cmpBuf[0] = x;
+			cmpBuf[1] = y;
+			Object ret = function.call(cx, scope, thisObj, cmpBuf);
+			double d = ScriptRuntime.toNumber(cx, ret);
+			int cmp = Double.compare(d, 0);
+			if (cmp < 0) {
+				return -1;
+			} else if (cmp > 0) {
+				return +1;
+			}
+			return 0;
+		}
+
+		/**
+		 * The value this element contributes to the subtraction, see {@link #numericSortKey}.
+		 */
+		double sortKey(Object x) {
+			String property = numericSortKey.property();
+			return ScriptRuntime.toNumber(cx, property == null ? x : ScriptRuntime.getObjectProp(cx, scope, x, property));
+		}
+	}
 }
@@ -36,6 +36,10 @@ public class ArrowFunction extends BaseFunction {
 		this.defineOwnProperty(cx, "arguments", throwing, false);
 	}
 
+	Callable getTargetFunction() {
+		return targetFunction;
+	}
+
 	@Override
 	public Object call(Context cx, Scriptable scope, Scriptable thisObj, Object[] args) {
 		Scriptable callThis = boundThis != null ? boundThis : cx.getTopCallOrThrow();
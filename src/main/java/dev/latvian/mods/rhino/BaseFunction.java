@@ -418,6 +418,10 @@ public class BaseFunction extends IdScriptableObject implements Function {
 	 * {@link #call} unless they are already set.
 	 */
 	public Scriptable createObject(Context cx, Scriptable scope) {
+		if (cx.quota != null) {
+			cx.quota.add(ResourceQuota.Resource.OBJECTS, 1L);
+		}
+
 		Scriptable newInstance = new NativeObject(cx.factory);
 		newInstance.setPrototype(getClassPrototype(cx));
 		newInstance.setParentScope(getParentScope());
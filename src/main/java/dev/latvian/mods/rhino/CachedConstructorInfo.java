@@ -26,6 +26,7 @@ public class CachedConstructorInfo extends CachedExecutableInfo {
 
 	final Constructor<?> constructor;
 	protected MethodHandle methodHandle;
+	private MethodHandle invoker;
 
 	public CachedConstructorInfo(CachedClassInfo parent, Constructor<?> constructor) {
 		super(parent, constructor);
@@ -49,13 +50,17 @@ public class CachedConstructorInfo extends CachedExecutableInfo {
 			// FIXME: Fix vararg method invocation
 			return constructor.newInstance(transformArgs(cx, null, parameters, args));
 		} else {
-			var mh = methodHandle;
+			var mh = invoker;
 
 			if (mh == null) {
-				mh = methodHandle = cx.factory.getMethodHandlesLookup().unreflectConstructor(constructor);
+				if (methodHandle == null) {
+					methodHandle = cx.factory.getMethodHandlesLookup().unreflectConstructor(constructor);
+				}
+
+				mh = invoker = spreadInvoker(methodHandle);
 			}
 
-			return mh.invokeWithArguments(transformArgs(cx, null, parameters, args));
+			return (Object) mh.invokeExact(transformArgs(cx, null, parameters, args));
 		}
 	}
 }
@@ -4,12 +4,24 @@ import dev.latvian.mods.rhino.type.TypeConsolidator;
 import dev.latvian.mods.rhino.type.TypeInfo;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Executable;
 import java.lang.reflect.Modifier;
 import java.util.List;
 
 public class CachedExecutableInfo extends CachedMemberInfo {
+	private static final MethodType SPREAD_INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+	/**
+	 * Adapts a handle to take all its arguments as one array and return Object, so it can be called with invokeExact
+	 * instead of invokeWithArguments, which creates new method types and an invoker on every call.
+	 */
+	static MethodHandle spreadInvoker(MethodHandle mh) {
+		return mh.asSpreader(Object[].class, mh.type().parameterCount()).asType(SPREAD_INVOKER_TYPE);
+	}
+
 	final Executable executable;
 	private MethodSignature signature;
 	private final int parameterCount;
@@ -5,10 +5,16 @@ import dev.latvian.mods.rhino.type.TypeInfo;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 
 public class CachedFieldInfo extends CachedMemberInfo {
+	private static final MethodType STATIC_GETTER_TYPE = MethodType.methodType(Object.class);
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType STATIC_SETTER_TYPE = MethodType.methodType(void.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
 	public static class Accessible {
 		CachedFieldInfo info;
 		String name = "";
@@ -59,13 +65,14 @@ public class CachedFieldInfo extends CachedMemberInfo {
 				field.setAccessible(true);
 			}
 
-			mh = getterMethodHandle = cx.factory.getMethodHandlesLookup().unreflectGetter(field);
+			// Erased to Object so it can be called with invokeExact, primitives are boxed by the handle
+			mh = getterMethodHandle = cx.factory.getMethodHandlesLookup().unreflectGetter(field).asType(isStatic ? STATIC_GETTER_TYPE : GETTER_TYPE);
 		}
 
 		if (isStatic) {
-			return mh.invokeWithArguments();
+			return (Object) mh.invokeExact();
 		} else {
-			return mh.invokeWithArguments(instance);
+			return (Object) mh.invokeExact(instance);
 		}
 	}
 
@@ -77,13 +84,13 @@ public class CachedFieldInfo extends CachedMemberInfo {
 				field.setAccessible(true);
 			}
 
-			mh = setterMethodHandle = cx.factory.getMethodHandlesLookup().unreflectSetter(field);
+			mh = setterMethodHandle = cx.factory.getMethodHandlesLookup().unreflectSetter(field).asType(isStatic ? STATIC_SETTER_TYPE : SETTER_TYPE);
 		}
 
 		if (isStatic) {
-			mh.invokeWithArguments(value);
+			mh.invokeExact(value);
 		} else {
-			mh.invokeWithArguments(instance, value);
+			mh.invokeExact(instance, value);
 		}
 	}
 }
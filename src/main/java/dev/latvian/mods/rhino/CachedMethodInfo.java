@@ -5,9 +5,12 @@ import dev.latvian.mods.rhino.type.TypeInfo;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
 
 public class CachedMethodInfo extends CachedExecutableInfo {
+	private static final MethodType GETTER_INVOKER_TYPE = MethodType.methodType(Object.class, Object.class);
+
 	public static class Accessible {
 		CachedMethodInfo info;
 		MethodSignature signature;
@@ -34,6 +37,8 @@ public class CachedMethodInfo extends CachedExecutableInfo {
 	final Method method;
 	private TypeInfo returnType;
 	protected MethodHandle methodHandle;
+	private MethodHandle invoker;
+	private MethodHandle getterInvoker;
 
 	public CachedMethodInfo(CachedClassInfo parent, Method m) {
 		super(parent, m);
@@ -67,17 +72,36 @@ public class CachedMethodInfo extends CachedExecutableInfo {
 
 			return method.invoke(isStatic ? null : instance, transformArgs(cx, null, parameters, args));
 		} else {
-			var mh = methodHandle;
+			if (args.length == 0 && !isStatic && !parameters.firstArgContext()) {
+				// Bean getters and other no-arg instance methods don't need an argument array at all
+				var mh = getterInvoker;
 
-			if (mh == null) {
-				if (!method.isAccessible()) {
-					method.setAccessible(true);
+				if (mh == null) {
+					mh = getterInvoker = getMethodHandle(cx).asType(GETTER_INVOKER_TYPE);
 				}
 
-				mh = methodHandle = cx.factory.getMethodHandlesLookup().unreflect(method);
+				return (Object) mh.invokeExact(instance);
+			}
+
+			var mh = invoker;
+
+			if (mh == null) {
+				mh = invoker = spreadInvoker(getMethodHandle(cx));
+			}
+
+			return (Object) mh.invokeExact(transformArgs(cx, isStatic ? null : instance, parameters, args));
+		}
+	}
+
+	private MethodHandle getMethodHandle(Context cx) throws IllegalAccessException {
+		if (methodHandle == null) {
+			if (!method.isAccessible()) {
+				method.setAccessible(true);
 			}
 
-			return mh.invokeWithArguments(transformArgs(cx, isStatic ? null : instance, parameters, args));
+			methodHandle = cx.factory.getMethodHandlesLookup().unreflect(method);
 		}
+
+		return methodHandle;
 	}
 }
@@ -8,6 +8,7 @@ package dev.latvian.mods.rhino;
 
 import dev.latvian.mods.rhino.ast.AstNode;
 import dev.latvian.mods.rhino.ast.AstRoot;
+import dev.latvian.mods.rhino.ast.AstSymbol;
 import dev.latvian.mods.rhino.ast.Block;
 import dev.latvian.mods.rhino.ast.FunctionNode;
 import dev.latvian.mods.rhino.ast.Jump;
@@ -56,6 +57,7 @@ class CodeGenerator extends Icode {
 	private long[] fixupTable;
 	private int fixupTableTop;
 	private int exceptionTableTop;
+	private int globalCellCount;
 
 	public InterpreterData compile(CompilerEnvirons compilerEnv, ScriptNode tree, boolean returnFunction, Context cx) {
 		this.compilerEnv = compilerEnv;
@@ -162,9 +164,15 @@ class CodeGenerator extends Icode {
 		itsData.argIsConst = scriptOrFn.getParamAndVarConst();
 		itsData.argCount = scriptOrFn.getParamCount();
 
+		IcodeOptimizer.optimize(itsData);
+
 		if (literalIds.size() != 0) {
 			itsData.literalIds = literalIds.toArray();
 		}
+
+		if (globalCellCount != 0) {
+			itsData.itsGlobalCells = new InterpreterData.GlobalCell[globalCellCount];
+		}
 	}
 
 	private void generateNestedFunctions(Context cx) {
@@ -230,11 +238,12 @@ class CodeGenerator extends Icode {
 	private void updateLineNumber(Node node) {
 		int lineno = node.getLineno();
 		if (lineno != lineNumber && lineno >= 0) {
-			if (itsData.firstLinePC < 0) {
-				itsData.firstLinePC = lineno;
-			}
 			lineNumber = lineno;
 			addIcode(Icode_LINE);
+			if (itsData.firstLinePC < 0) {
+				// Same position Icode_LINE stores in pcSourceLineStart
+				itsData.firstLinePC = iCodeTop;
+			}
 			addUint16(lineno & 0xFFFF);
 		}
 	}
@@ -689,11 +698,16 @@ class CodeGenerator extends Icode {
 			}
 			case Token.STRICT_SETNAME, Token.SETNAME -> {
 				String name = child.getString();
-				visitExpression(child, 0);
-				child = child.getNext();
-				visitExpression(child, 0);
-				addStringOp(type, name);
-				stackChange(-1);
+				if (isLexicalName(node, name, Icode_SETUPVAR, -1)) {
+					visitExpression(child.getNext(), 0);
+					addLexicalNameOp(node, name, Icode_SETUPVAR, -1);
+				} else {
+					visitExpression(child, 0);
+					child = child.getNext();
+					visitExpression(child, 0);
+					addStringOp(type, name);
+					stackChange(-1);
+				}
 			}
 			case Token.SETCONST -> {
 				String name = child.getString();
@@ -719,7 +733,14 @@ class CodeGenerator extends Icode {
 					addToken(Token.TYPEOF);
 				}
 			}
-			case Token.BINDNAME, Token.NAME, Token.STRING -> {
+			case Token.NAME -> {
+				String name = node.getString();
+				if (!addLexicalNameOp(node, name, Icode_GETUPVAR, Icode_GETGLOBAL)) {
+					addStringOp(type, name);
+				}
+				stackChange(1);
+			}
+			case Token.BINDNAME, Token.STRING -> {
 				addStringOp(type, node.getString());
 				stackChange(1);
 			}
@@ -833,7 +854,9 @@ class CodeGenerator extends Icode {
 			case Token.NAME -> {
 				String name = left.getString();
 				// stack: ... -> ... function thisObj
-				addStringOp(Icode_NAME_AND_THIS, name);
+				if (!addLexicalNameOp(left, name, -1, Icode_GLOBAL_AND_THIS)) {
+					addStringOp(Icode_NAME_AND_THIS, name);
+				}
 				stackChange(2);
 			}
 			case Token.GETPROP, Token.GETELEM -> {
@@ -1198,6 +1221,55 @@ class CodeGenerator extends Icode {
 		}
 	}
 
+	/**
+	 * Returns the index of a name resolved by NodeTransformer to a variable
+	 * of an enclosing function in that function's activation, or -1.
+	 */
+	private static int getUpvarIndex(ScriptNode defining, String name) {
+		AstSymbol symbol = defining.getSymbol(name);
+		if (symbol == null || symbol.getIndex() < 0 || symbol.getIndex() > 0xFFFF) {
+			return -1;
+		}
+		return symbol.getIndex();
+	}
+
+	private static boolean isLexicalName(Node node, String name, int upvarOp, int globalOp) {
+		ScriptNode defining = (ScriptNode) node.getProp(Node.UPVAR_SCOPE_PROP);
+		if (defining == null) {
+			return false;
+		} else if (defining.getType() == Token.FUNCTION) {
+			return upvarOp != -1 && getUpvarIndex(defining, name) != -1;
+		}
+		return globalOp != -1;
+	}
+
+	/**
+	 * Emits access to a name NodeTransformer resolved by lexical address,
+	 * either a variable of an enclosing function or a global name, or
+	 * returns false if the name has to be looked up along the scope chain.
+	 * The name is kept in the string register for the fallback lookup.
+	 */
+	private boolean addLexicalNameOp(Node node, String name, int upvarOp, int globalOp) {
+		if (!isLexicalName(node, name, upvarOp, globalOp)) {
+			return false;
+		}
+		ScriptNode defining = (ScriptNode) node.getProp(Node.UPVAR_SCOPE_PROP);
+		if (defining.getType() != Token.FUNCTION && globalCellCount > 0xFFFF) {
+			return false;
+		}
+		addStringPrefix(name);
+		if (defining.getType() == Token.FUNCTION) {
+			addIcode(upvarOp);
+			addUint8(node.getExistingIntProp(Node.UPVAR_DEPTH_PROP));
+			addUint16(getUpvarIndex(defining, name));
+		} else {
+			addIcode(globalOp);
+			addUint8(node.getExistingIntProp(Node.UPVAR_DEPTH_PROP));
+			addUint16(globalCellCount++);
+		}
+		return true;
+	}
+
 	private void addIndexOp(int op, int index) {
 		addIndexPrefix(index);
 		if (validIcode(op)) {
@@ -7,6 +7,17 @@
 package dev.latvian.mods.rhino;
 
 public class ConsString {
+	/**
+	 * Concatenates the strings and counts the result against the resource quota of the context.
+	 */
+	public static String flatten(Context cx, CharSequence left, CharSequence right) {
+		if (cx.quota != null) {
+			cx.quota.add(ResourceQuota.Resource.STRING_CHARS, (long) left.length() + right.length());
+		}
+
+		return flatten(left, right);
+	}
+
 	public static String flatten(CharSequence left, CharSequence right) {
 		int l = left.length();
 		int r = right.length();
@@ -33,6 +33,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.DoubleSupplier;
@@ -204,6 +205,7 @@ public class Context {
 	}
 
 	public final ContextFactory factory;
+	// No longer locked by Rhino, contexts are confined to one thread at a time, see ContextFactory#bind
 	public final Object lock = new Object();
 
 	// Generate an observer count on compiled code
@@ -221,6 +223,14 @@ public class Context {
 	// For instruction counting (interpreter only)
 	int instructionCount;
 	int instructionThreshold;
+	// Profiler this context is attached to, see ScriptProfiler#attach
+	ScriptProfiler profiler;
+	// Task that is currently running on this context, see ScriptTask#run
+	ScriptTask task;
+	// Resources used by scripts of this context, see ResourceQuota
+	ResourceQuota quota;
+	// Arrays of returned interpreter frames for reuse
+	Interpreter.FramePool framePool;
 	// It can be used to return the second uint32 result from function
 	long scratchUint32;
 	// It can be used to return the second Scriptable result from function
@@ -569,6 +579,10 @@ public class Context {
 	 * @return the new object
 	 */
 	public Scriptable newObject(Scriptable scope) {
+		if (quota != null) {
+			quota.add(ResourceQuota.Resource.OBJECTS, 1L);
+		}
+
 		NativeObject result = new NativeObject(factory);
 		ScriptRuntime.setBuiltinProtoAndParent(this, scope, result, TopLevel.Builtins.Object);
 		return result;
@@ -645,6 +659,33 @@ public class Context {
 		return result;
 	}
 
+	/**
+	 * Create an array with the elements of a Java array. Numbers and strings are stored as they are, other
+	 * elements are wrapped the same way as when they're read from a {@link NativeJavaArray}. Arrays of numbers
+	 * and strings are copied with a typed loop, which is much cheaper than reading them one by one from a script.
+	 *
+	 * @param scope     the scope to create the object in.
+	 * @param javaArray an array of any component type.
+	 * @return the new array object.
+	 */
+	public Scriptable newArrayFromJava(Scriptable scope, Object javaArray) {
+		var type = javaArray.getClass().getComponentType();
+		Object[] elements;
+
+		if (type == int.class || type == long.class || type == float.class || type == double.class || type == String.class) {
+			elements = new ArrayValueProvider.FromJavaArray(javaArray, Array.getLength(javaArray)).getArrayValues(this);
+		} else {
+			var componentType = TypeInfo.of(type);
+			elements = new Object[Array.getLength(javaArray)];
+
+			for (int i = 0; i < elements.length; i++) {
+				elements[i] = wrap(scope, Array.get(javaArray, i), componentType);
+			}
+		}
+
+		return newArray(scope, elements);
+	}
+
 	//--------------------------
 	// Primitive conversion methods
 	//--------------------------
@@ -831,6 +872,32 @@ public class Context {
 	protected void observeInstructionCount(int instructionCount) {
 	}
 
+	/**
+	 * Get the quota that scripts of this context are counted against, or null if they aren't limited.
+	 */
+	@Nullable
+	public final ResourceQuota getResourceQuota() {
+		return quota;
+	}
+
+	/**
+	 * Counts resources used by scripts of this context against the quota, null to stop counting.
+	 * Instruction counting stays enabled while a quota is set, even without an instruction observer threshold.
+	 */
+	public final void setResourceQuota(@Nullable ResourceQuota quota) {
+		this.quota = quota;
+	}
+
+	/**
+	 * Get the profiler sampling this context, or null if it isn't being profiled.
+	 *
+	 * @see ScriptProfiler#attach(Context)
+	 */
+	@Nullable
+	public final ScriptProfiler getProfiler() {
+		return profiler;
+	}
+
 
 	public final ClassLoader getApplicationClassLoader() {
 		if (applicationClassLoader == null) {
@@ -1079,48 +1146,55 @@ public class Context {
 	}
 
 	public boolean hasTopCallScope() {
-		synchronized (lock) {
-			return topCallScope != null;
-		}
+		return topCallScope != null;
 	}
 
 	public Scriptable getTopCallScope() {
-		synchronized (lock) {
-			return topCallScope;
-		}
+		return topCallScope;
 	}
 
 	public Scriptable getTopCallOrThrow() {
-		synchronized (lock) {
-			if (topCallScope == null) {
-				throw new IllegalStateException();
-			}
-
-			return topCallScope;
+		if (topCallScope == null) {
+			throw new IllegalStateException();
 		}
+
+		return topCallScope;
 	}
 
 	public void setTopCall(Scriptable scope) {
-		synchronized (lock) {
-			topCallScope = scope;
-		}
+		topCallScope = scope;
 	}
 
 	public void storeScriptable(Scriptable value) {
-		synchronized (lock) {
-			// The previously stored scratchScriptable should be consumed
-			if (scratchScriptable != null) {
-				throw new IllegalStateException();
-			}
-			scratchScriptable = value;
+		// The previously stored scratchScriptable should be consumed
+		if (scratchScriptable != null) {
+			throw new IllegalStateException();
 		}
+		scratchScriptable = value;
 	}
 
 	public Scriptable lastStoredScriptable() {
-		synchronized (lock) {
-			Scriptable result = scratchScriptable;
-			scratchScriptable = null;
-			return result;
+		Scriptable result = scratchScriptable;
+		scratchScriptable = null;
+		return result;
+	}
+
+	/**
+	 * Discards state left behind by scripts that ran on this context, before it is reused by another thread.
+	 */
+	void resetThreadState() {
+		lastInterpreterFrame = null;
+		previousInterpreterInvocations = null;
+		currentActivationCall = null;
+		instructionCount = 0;
+		scratchUint32 = 0L;
+		scratchScriptable = null;
+		task = null;
+		threadLocalMap = null;
+		quota = null;
+
+		if (profiler != null) {
+			profiler.detach(this);
 		}
 	}
 
@@ -1136,11 +1210,12 @@ public class Context {
 	 * It is allowed but not advisable to use null for <code>factory</code>
 	 * argument in which case the global static singleton ContextFactory
 	 * instance will be used to create new context instances.
+	 * <p>
+	 * Contexts are only used by one thread at a time, so this no longer locks
+	 * anything, which keeps virtual threads running scripts from being pinned.
 	 */
 	public Object callSync(Callable callable, Scriptable scope, Scriptable thisObj, Object[] args) {
-		synchronized (lock) {
-			return callable.call(this, scope, thisObj, args);
-		}
+		return callable.call(this, scope, thisObj, args);
 	}
 
 	public Object doTopCall(Scriptable scope, Callable callable, Scriptable thisObj, Object[] args, boolean isTopLevelStrict) {
@@ -1210,6 +1285,24 @@ public class Context {
 			return w.convertJavaToJs(this, scope, target);
 		}
 
+		var cache = factory.isWrapperCached(javaObject.getClass()) ? WrapperCache.get(scope, true) : null;
+
+		if (cache != null) {
+			var wrapper = cache.get(javaObject);
+
+			// Objects seen through a different static type get another wrapper, as their members can differ
+			if (wrapper == null || !wrapper.typeInfo.equals(target)) {
+				wrapper = createJavaObjectWrapper(scope, javaObject, target);
+				cache.put(javaObject, wrapper);
+			}
+
+			return wrapper;
+		}
+
+		return createJavaObjectWrapper(scope, javaObject, target);
+	}
+
+	private NativeJavaObject createJavaObjectWrapper(Scriptable scope, Object javaObject, TypeInfo target) {
 		if (javaObject instanceof Map map) {
 			return new NativeJavaMap(this, scope, map, map, target);
 		} else if (javaObject instanceof List list) {
@@ -1222,6 +1315,19 @@ public class Context {
 		return new NativeJavaObject(scope, javaObject, target, this);
 	}
 
+	/**
+	 * Forget the wrappers cached in the top-level scope of scope, see {@link ContextFactory#cacheWrappers(Class)}.
+	 * Java objects passed to scripts after this get new wrappers. Embeddings that keep a scope for a long time can
+	 * call this at the start of every tick or other unit of work, so wrappers are only reused within it.
+	 */
+	public void clearWrapperCache(Scriptable scope) {
+		var cache = WrapperCache.get(scope, false);
+
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
 	/**
 	 * Wrap an object newly created by a constructor call.
 	 *
@@ -1262,6 +1368,18 @@ public class Context {
 		return Integer.MAX_VALUE;
 	}
 
+	/**
+	 * Whether errors raised by scripts (thrown values, TypeErrors etc.) should
+	 * fill in their Java stack trace. Walking the Java stack is the bulk of the
+	 * cost of a throw; without it the script stack of the exception is still
+	 * available from {@link RhinoException#getScriptStack()} and the error's
+	 * "stack" property, but printed stack traces only show script frames.
+	 * Exceptions wrapping a Java exception always keep their stack trace.
+	 */
+	public boolean captureJavaStackTraces() {
+		return true;
+	}
+
 	public ArrayValueProvider arrayValueProviderOf(Object value) {
 		if (value instanceof Object[] arr) {
 			return arr.length == 0 ? ArrayValueProvider.EMPTY : new ArrayValueProvider.FromPlainJavaArray(arr);
@@ -1301,7 +1419,38 @@ public class Context {
 		return arrayValueProviderOf(from).createArray(this, target);
 	}
 
+	/**
+	 * Whether {@link #listOf(Object, TypeInfo)}, {@link #setOf(Object, TypeInfo)} and {@link #mapOf(Object, TypeInfo, TypeInfo)}
+	 * return views instead of converted copies, false unless enabled with {@link ContextFactory#setCollectionViews(boolean)}.
+	 */
+	public boolean useCollectionViews() {
+		return factory.getCollectionViews();
+	}
+
 	public Object listOf(@Nullable Object from, TypeInfo target) {
+		return useCollectionViews() ? listViewOf(from, target) : listCopyOf(from, target);
+	}
+
+	/**
+	 * Same as {@link #listOf(Object, TypeInfo)}, but returns a read-only view that converts elements of script arrays as
+	 * they're read, instead of a converted copy. Views make passing large arrays to Java methods that only look at a few
+	 * elements cheap, but they can't be modified, follow later changes of the array, report conversion errors only when
+	 * an element is read and keep using this context, so they must not outlive the call they're passed to.
+	 */
+	public Object listViewOf(@Nullable Object from, TypeInfo target) {
+		if (from instanceof NativeArray array) {
+			return new ConvertedList(this, ArrayValueProvider.fromNativeArray(array), target);
+		} else if (from instanceof NativeJavaList n && n.list instanceof RandomAccess && target != null && !target.equals(n.listType)) {
+			return new ConvertedList(this, ArrayValueProvider.fromJavaList(n.list, n), target);
+		}
+
+		return listCopyOf(from, target);
+	}
+
+	/**
+	 * Converts script arrays to a new list.
+	 */
+	public Object listCopyOf(@Nullable Object from, TypeInfo target) {
 		if (from instanceof NativeJavaList n) {
 			if (target == null) {
 				// No conversion necessary
@@ -1338,6 +1487,27 @@ public class Context {
 	}
 
 	public Object setOf(@Nullable Object from, TypeInfo target) {
+		return useCollectionViews() ? setViewOf(from, target) : setCopyOf(from, target);
+	}
+
+	/**
+	 * Same as {@link #setOf(Object, TypeInfo)}, but returns a read-only set that only converts the elements the first
+	 * time it's used, see {@link #listViewOf(Object, TypeInfo)}.
+	 */
+	public Object setViewOf(@Nullable Object from, TypeInfo target) {
+		if (from instanceof NativeArray array) {
+			return new ConvertedSet(this, array, target);
+		} else if (from instanceof NativeJavaList n && target != null && !target.equals(n.listType)) {
+			return new ConvertedSet(this, n, target);
+		}
+
+		return setCopyOf(from, target);
+	}
+
+	/**
+	 * Converts all elements to a new set right away.
+	 */
+	public Object setCopyOf(@Nullable Object from, TypeInfo target) {
 		if (from instanceof NativeJavaList n) {
 			if (target == null) {
 				// No conversion necessary
@@ -1360,6 +1530,27 @@ public class Context {
 	}
 
 	public Object mapOf(@Nullable Object from, TypeInfo kTarget, TypeInfo vTarget) {
+		return useCollectionViews() ? mapViewOf(from, kTarget, vTarget) : mapCopyOf(from, kTarget, vTarget);
+	}
+
+	/**
+	 * Same as {@link #mapOf(Object, TypeInfo, TypeInfo)}, but returns a read-only view that converts values of script
+	 * objects as they're read, see {@link #listViewOf(Object, TypeInfo)}.
+	 */
+	public Object mapViewOf(@Nullable Object from, TypeInfo kTarget, TypeInfo vTarget) {
+		if (from instanceof NativeObject obj && ConvertedMap.canConvertKeys(kTarget)) {
+			return new ConvertedMap(this, obj, kTarget, vTarget);
+		} else if (from instanceof NativeJavaMap n && vTarget.shouldConvert() && !vTarget.equals(n.mapValueType) && (!kTarget.shouldConvert() || kTarget.equals(n.mapKeyType))) {
+			return new ConvertedMap(this, n.map, vTarget);
+		}
+
+		return mapCopyOf(from, kTarget, vTarget);
+	}
+
+	/**
+	 * Converts script objects to a new map.
+	 */
+	public Object mapCopyOf(@Nullable Object from, TypeInfo kTarget, TypeInfo vTarget) {
 		if (from instanceof NativeJavaMap n) {
 			if (!kTarget.shouldConvert() && !vTarget.shouldConvert()) {
 				// No conversion necessary
@@ -1541,18 +1732,7 @@ public class Context {
 			var arrayType = target.componentType();
 
 			if (from instanceof NativeArray array) {
-				long length = array.getLength();
-
-				Object result = arrayType.newArray((int) length);
-				for (int i = 0; i < length; ++i) {
-					try {
-						Array.set(result, i, jsToJava(array.get(this, i, array), arrayType));
-					} catch (EvaluatorException ee) {
-						return reportConversionError(from, target);
-					}
-				}
-
-				return result;
+				return array.toJavaArray(this, arrayType);
 			} else {
 				// Convert a single value to an array
 				Object result = arrayType.newArray(1);
@@ -7,46 +7,153 @@ import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationTargetException;
-import java.util.IdentityHashMap;
+import java.util.Deque;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ContextFactory {
+	// Released contexts kept for reuse, see #release
+	private static final int MAX_POOLED_CONTEXTS = 64;
+
 	private final ThreadLocal<Context> currentContext;
+	private final Deque<Context> contextPool;
+	private final AtomicInteger pooledContexts;
 	private final TypeWrappers typeWrappers;
 	private final Map<Class<?>, Object[]> defaultRecordProperties;
 	private final MethodHandles.Lookup methodHandlesLookup;
 	private final Map<Class<?>, MethodHandle> recordConstructors;
+	private final Map<Class<?>, MethodHandle> recordFactories;
 	private boolean instanceStaticFallback;
+	private boolean collectionViews;
+	private final Set<Class<?>> cachedWrapperTypes;
+	private final Map<Class<?>, Boolean> cachedWrapperClasses;
 
 	public ContextFactory() {
-		this.currentContext = ThreadLocal.withInitial(this::createContext);
+		this.currentContext = new ThreadLocal<>();
+		this.contextPool = new ConcurrentLinkedDeque<>();
+		this.pooledContexts = new AtomicInteger();
 		this.typeWrappers = new TypeWrappers();
-		this.defaultRecordProperties = new IdentityHashMap<>();
+		this.defaultRecordProperties = new ConcurrentHashMap<>();
 		this.methodHandlesLookup = MethodHandles.publicLookup();
-		this.recordConstructors = new IdentityHashMap<>();
+		this.recordConstructors = new ConcurrentHashMap<>();
+		this.recordFactories = new ConcurrentHashMap<>();
 		this.instanceStaticFallback = true;
+		this.cachedWrapperTypes = ConcurrentHashMap.newKeySet();
+		this.cachedWrapperClasses = new ConcurrentHashMap<>();
 	}
 
 	protected Context createContext() {
 		return new Context(this);
 	}
 
-	// private Context unsafeContext;
-
+	/**
+	 * Returns the context bound to the current thread, creating and binding a new one if there is none.
+	 * <p>
+	 * Contexts created this way stay bound to their thread for its whole life. Code running on many
+	 * short-lived threads, such as virtual threads, should use {@link #call(ContextAction)} instead,
+	 * which reuses contexts.
+	 */
 	public Context enter() {
-		// if (unsafeContext == null) {
-		//	unsafeContext = createContext();
-		// }
+		Context cx = currentContext.get();
+
+		if (cx == null) {
+			cx = createContext();
+			currentContext.set(cx);
+		}
+
+		return cx;
+	}
+
+	/**
+	 * Runs the action with the context bound to the current thread. If there is none, a pooled context
+	 * is bound for the duration of the action and released afterwards.
+	 */
+	public <T> T call(ContextAction<T> action) {
+		Context cx = currentContext.get();
+
+		if (cx != null) {
+			return action.run(cx);
+		}
+
+		cx = acquire();
+		currentContext.set(cx);
+
+		try {
+			return action.run(cx);
+		} finally {
+			currentContext.remove();
+			release(cx);
+		}
+	}
+
+	/**
+	 * Binds the context to the current thread, so that {@link #enter()} returns it.
+	 * A context must not be bound to more than one thread at a time.
+	 *
+	 * @param cx context to bind, or null to unbind the current one
+	 * @return the previously bound context, or null if there was none
+	 */
+	@Nullable
+	public Context bind(@Nullable Context cx) {
+		if (cx != null && cx.factory != this) {
+			throw new IllegalArgumentException("Context belongs to a different factory");
+		}
+
+		Context previous = currentContext.get();
+
+		if (cx == null) {
+			currentContext.remove();
+		} else {
+			currentContext.set(cx);
+		}
+
+		return previous;
+	}
+
+	/**
+	 * Takes a context from the pool of released contexts, or creates a new one.
+	 * The context isn't bound to any thread, see {@link #bind(Context)}.
+	 */
+	public Context acquire() {
+		Context cx = contextPool.pollFirst();
+
+		if (cx == null) {
+			return createContext();
+		}
+
+		pooledContexts.decrementAndGet();
+		return cx;
+	}
+
+	/**
+	 * Returns a context that isn't running a script to the pool, after discarding its per-thread state.
+	 * Its resource quota is removed and its profiler detached, so the next caller doesn't inherit them.
+	 * It must not be used or bound anymore after this.
+	 */
+	public void release(Context cx) {
+		if (cx.factory != this) {
+			throw new IllegalArgumentException("Context belongs to a different factory");
+		} else if (cx.hasTopCallScope()) {
+			throw new IllegalStateException("Context is still running a script");
+		}
 
-		// return unsafeContext;
-		return currentContext.get();
+		cx.resetThreadState();
+
+		if (pooledContexts.incrementAndGet() <= MAX_POOLED_CONTEXTS) {
+			contextPool.addFirst(cx);
+		} else {
+			pooledContexts.decrementAndGet();
+		}
 	}
 
-	public synchronized TypeWrappers getTypeWrappers() {
+	public TypeWrappers getTypeWrappers() {
 		return typeWrappers;
 	}
 
-	public synchronized void registerDefaultRecordProperties(Record record) {
+	public void registerDefaultRecordProperties(Record record) {
 		try {
 			var components = record.getClass().getRecordComponents();
 			var properties = new Object[components.length];
@@ -62,7 +169,7 @@ public class ContextFactory {
 	}
 
 	@Nullable
-	public synchronized Object[] getDefaultRecordProperties(Class<?> type) {
+	public Object[] getDefaultRecordProperties(Class<?> type) {
 		return defaultRecordProperties.get(type);
 	}
 
@@ -71,7 +178,7 @@ public class ContextFactory {
 	}
 
 	@Nullable
-	public synchronized MethodHandle getRecordConstructor(Class<?> type) {
+	public MethodHandle getRecordConstructor(Class<?> type) {
 		if (!type.isRecord()) {
 			return null;
 		}
@@ -98,6 +205,28 @@ public class ContextFactory {
 		return constructor;
 	}
 
+	/**
+	 * Returns the canonical constructor of a record adapted to (Object[])Object, so it can be called with
+	 * invokeExact instead of the much slower invokeWithArguments. Primitive components are unboxed by the handle.
+	 */
+	@Nullable
+	public MethodHandle getRecordFactory(Class<?> type) {
+		var factory = recordFactories.get(type);
+
+		if (factory == null) {
+			var constructor = getRecordConstructor(type);
+
+			if (constructor == null) {
+				return null;
+			}
+
+			factory = constructor.asSpreader(Object[].class, constructor.type().parameterCount()).asType(MethodType.methodType(Object.class, Object[].class));
+			recordFactories.put(type, factory);
+		}
+
+		return factory;
+	}
+
 	public void setInstanceStaticFallback(boolean value) {
 		instanceStaticFallback = value;
 	}
@@ -106,6 +235,55 @@ public class ContextFactory {
 		return instanceStaticFallback;
 	}
 
+	/**
+	 * Let {@link Context#listOf}, {@link Context#setOf} and {@link Context#mapOf} return read-only views of script
+	 * arrays and objects instead of mutable copies, see {@link Context#listViewOf}. Only enable this if the Java methods
+	 * scripts call neither modify nor keep their collection arguments.
+	 */
+	public void setCollectionViews(boolean value) {
+		collectionViews = value;
+	}
+
+	public boolean getCollectionViews() {
+		return collectionViews;
+	}
+
+	/**
+	 * Reuse the wrappers of instances of this class and its subclasses while they're alive, instead of creating
+	 * a new one every time such an object is passed to a script. The same object then is the same script value,
+	 * so strict equality works without {@link dev.latvian.mods.rhino.util.SpecialEquality} and loops over the same
+	 * objects don't allocate. Wrappers are cached weakly per top-level scope, see {@link Context#clearWrapperCache(Scriptable)}.
+	 * <p>
+	 * Only enable this for classes whose wrappers don't get per-object state, such as custom members.
+	 */
+	public void cacheWrappers(Class<?> type) {
+		cachedWrapperTypes.add(type);
+		cachedWrapperClasses.clear();
+	}
+
+	public boolean isWrapperCached(Class<?> type) {
+		if (cachedWrapperTypes.isEmpty()) {
+			return false;
+		}
+
+		var cached = cachedWrapperClasses.get(type);
+
+		if (cached == null) {
+			cached = false;
+
+			for (var t : cachedWrapperTypes) {
+				if (t.isAssignableFrom(type)) {
+					cached = true;
+					break;
+				}
+			}
+
+			cachedWrapperClasses.put(type, cached);
+		}
+
+		return cached;
+	}
+
 	public CachedClassStorage getCachedClassStorage() {
 		return CachedClassStorage.GLOBAL_PUBLIC;
 	}
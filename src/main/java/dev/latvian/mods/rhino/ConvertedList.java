@@ -0,0 +1,66 @@
+package dev.latvian.mods.rhino;
+
+import dev.latvian.mods.rhino.type.TypeInfo;
+import dev.latvian.mods.rhino.util.ArrayValueProvider;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list that converts the elements of a script array or Java list when they're read,
+ * see {@link Context#listViewOf(Object, TypeInfo)}.
+ * <p>
+ * Reads go through to the source, so the list follows changes to it. Converted elements are
+ * cached for as long as the source element at that index stays the same object.
+ */
+final class ConvertedList extends AbstractList<Object> implements RandomAccess {
+	private final Context cx;
+	private final ArrayValueProvider source;
+	private final TypeInfo target;
+	private Object[] sourceElements;
+	private Object[] convertedElements;
+
+	ConvertedList(Context cx, ArrayValueProvider source, TypeInfo target) {
+		this.cx = cx;
+		this.source = source;
+		this.target = target;
+	}
+
+	@Override
+	public Object get(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException(index);
+		}
+
+		var value = source.getArrayValue(cx, index);
+
+		if (sourceElements == null) {
+			sourceElements = new Object[Math.max(size(), 8)];
+			convertedElements = new Object[sourceElements.length];
+		} else if (index >= sourceElements.length) {
+			int length = Math.max(index + 1, sourceElements.length * 2);
+			sourceElements = Arrays.copyOf(sourceElements, length);
+			convertedElements = Arrays.copyOf(convertedElements, length);
+		} else if (sourceElements[index] == value && value != null) {
+			return convertedElements[index];
+		}
+
+		Object converted;
+
+		try {
+			converted = cx.jsToJava(value, target);
+		} catch (EvaluatorException ee) {
+			return cx.reportConversionError(source.getErrorSource(cx), target);
+		}
+
+		sourceElements[index] = value;
+		convertedElements[index] = converted;
+		return converted;
+	}
+
+	@Override
+	public int size() {
+		return source.getLength(cx);
+	}
+}
@@ -0,0 +1,164 @@
+package dev.latvian.mods.rhino;
+
+import dev.latvian.mods.rhino.type.TypeInfo;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read-only map that converts the values of a script object or Java map when they're read,
+ * see {@link Context#mapViewOf(Object, TypeInfo, TypeInfo)}.
+ * <p>
+ * Keys are only converted to strings, any other key conversion needs a copy, since lookups
+ * have to map the key back to the source. Reads go through to the source and converted values
+ * are cached for as long as the source value stays the same object.
+ */
+final class ConvertedMap extends AbstractMap<Object, Object> {
+	private final Context cx;
+	private final ScriptableObject object;
+	private final Map<?, ?> map;
+	private final TypeInfo kTarget;
+	private final TypeInfo vTarget;
+	private Map<Object, Object[]> cache;
+
+	/**
+	 * View of the enumerable own properties of a script object.
+	 */
+	ConvertedMap(Context cx, ScriptableObject object, TypeInfo kTarget, TypeInfo vTarget) {
+		this.cx = cx;
+		this.object = object;
+		this.map = null;
+		this.kTarget = kTarget;
+		this.vTarget = vTarget;
+	}
+
+	/**
+	 * View of a Java map whose keys don't need conversion.
+	 */
+	ConvertedMap(Context cx, Map<?, ?> map, TypeInfo vTarget) {
+		this.cx = cx;
+		this.object = null;
+		this.map = map;
+		this.kTarget = TypeInfo.NONE;
+		this.vTarget = vTarget;
+	}
+
+	/**
+	 * Whether keys converted to kTarget can be mapped back to property ids.
+	 */
+	static boolean canConvertKeys(TypeInfo kTarget) {
+		return !kTarget.shouldConvert() || kTarget.equals(TypeInfo.STRING);
+	}
+
+	private ScriptRuntime.StringIdOrIndex toId(Object key) {
+		if (!(key instanceof String || key instanceof Number && !kTarget.shouldConvert())) {
+			return null;
+		}
+
+		var id = ScriptRuntime.toStringIdOrIndex(cx, key);
+		boolean enumerable;
+
+		if (id.stringId == null) {
+			enumerable = object.has(cx, id.index, object) && (object.getAttributes(cx, id.index) & ScriptableObject.DONTENUM) == 0;
+		} else {
+			enumerable = object.has(cx, id.stringId, object) && (object.getAttributes(cx, id.stringId) & ScriptableObject.DONTENUM) == 0;
+		}
+
+		return enumerable ? id : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return object == null ? map.containsKey(key) : toId(key) != null;
+	}
+
+	@Override
+	public Object get(Object key) {
+		Object value;
+
+		if (object == null) {
+			value = map.get(key);
+
+			if (value == null && !map.containsKey(key)) {
+				return null;
+			}
+		} else {
+			var id = toId(key);
+
+			if (id == null) {
+				return null;
+			}
+
+			value = object.get(cx, id.stringId == null ? (Object) id.index : id.stringId);
+		}
+
+		if (cache == null) {
+			cache = new HashMap<>();
+		} else {
+			var cached = cache.get(key);
+
+			if (cached != null && cached[0] == value) {
+				return cached[1];
+			}
+		}
+
+		var converted = cx.jsToJava(value, vTarget);
+		cache.put(key, new Object[]{value, converted});
+		return converted;
+	}
+
+	@Override
+	public int size() {
+		return object == null ? map.size() : object.getSharedIds(cx).length;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Set<Entry<Object, Object>> entrySet() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Entry<Object, Object>> iterator() {
+				var keys = object == null ? map.keySet().iterator() : new Iterator<>() {
+					private final Object[] ids = object.getSharedIds(cx);
+					private int index;
+
+					@Override
+					public boolean hasNext() {
+						return index < ids.length;
+					}
+
+					@Override
+					public Object next() {
+						return cx.jsToJava(ids[index++], kTarget);
+					}
+				};
+
+				return new Iterator<>() {
+					@Override
+					public boolean hasNext() {
+						return keys.hasNext();
+					}
+
+					@Override
+					public Entry<Object, Object> next() {
+						var key = keys.next();
+						return new SimpleImmutableEntry<>(key, get(key));
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ConvertedMap.this.size();
+			}
+		};
+	}
+}
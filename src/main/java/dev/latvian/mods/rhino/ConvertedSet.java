@@ -0,0 +1,51 @@
+package dev.latvian.mods.rhino;
+
+import dev.latvian.mods.rhino.type.TypeInfo;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Read-only set of the converted elements of a script array or Java list, see {@link Context#setViewOf(Object, TypeInfo)}.
+ * <p>
+ * Sets can't skip duplicates without converting every element, so unlike {@link ConvertedList} this isn't a live view:
+ * the elements are converted all at once the first time the set is used, keeping Java methods that never look at it free.
+ */
+final class ConvertedSet extends AbstractSet<Object> {
+	private final Context cx;
+	private final Object source;
+	private final TypeInfo target;
+	private Set<Object> set;
+
+	ConvertedSet(Context cx, Object source, TypeInfo target) {
+		this.cx = cx;
+		this.source = source;
+		this.target = target;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Set<Object> set() {
+		if (set == null) {
+			set = Collections.unmodifiableSet((Set<Object>) cx.setCopyOf(source, target));
+		}
+
+		return set;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return set().iterator();
+	}
+
+	@Override
+	public int size() {
+		return set().size();
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		return set().contains(o);
+	}
+}
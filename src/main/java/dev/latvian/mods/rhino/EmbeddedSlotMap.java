@@ -104,6 +104,9 @@ public class EmbeddedSlotMap implements SlotMap {
 	 */
 	@Override
 	public ScriptableObject.Slot query(Object key, int index) {
+		// Read the table once, ThreadSafeSlotMapContainer queries without a lock while other threads may replace it
+		final ScriptableObject.Slot[] slots = this.slots;
+
 		if (slots == null) {
 			return null;
 		}
@@ -232,6 +235,7 @@ public class EmbeddedSlotMap implements SlotMap {
 				} else {
 					prev.next = newSlot;
 				}
+				slot.removed = true;
 				return newSlot;
 			}
 		}
@@ -324,6 +328,7 @@ public class EmbeddedSlotMap implements SlotMap {
 				if (slot == lastAdded) {
 					lastAdded = prev;
 				}
+				slot.removed = true;
 			}
 		}
 	}
@@ -20,6 +20,10 @@ public class EvaluatorException extends RhinoException {
 		super(cx, detail);
 	}
 
+	EvaluatorException(Context cx, String detail, Throwable cause) {
+		super(cx, detail, cause);
+	}
+
 	/**
 	 * Create an exception with the specified detail message.
 	 * <p>
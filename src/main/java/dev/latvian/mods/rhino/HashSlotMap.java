@@ -81,6 +81,7 @@ public class HashSlotMap implements SlotMap {
 			}
 			newSlot.value = slot.value;
 			map.put(name, newSlot);
+			slot.removed = true;
 			return newSlot;
 		}
 
@@ -111,6 +112,7 @@ public class HashSlotMap implements SlotMap {
 				return;
 			}
 			map.remove(name);
+			slot.removed = true;
 		}
 	}
 
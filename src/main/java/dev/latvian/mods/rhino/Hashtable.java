@@ -1,63 +1,38 @@
 package dev.latvian.mods.rhino;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
 /**
- * This generic hash table class is used by Set and Map. It uses
- * a standard HashMap for storing keys and values so that we can handle
- * lots of hash collisions if necessary, and a doubly-linked list to support the iterator
- * capability.
+ * This generic hash table class is used by Set and Map. Entries are kept in
+ * insertion order in parallel key, value and hash arrays, and found through a
+ * separate open-addressing index of entry positions, so an entry costs a few
+ * array slots instead of several objects.
  * <p>
- * This second one is important because JavaScript handling of
- * the iterator is completely different from the way that Java does it. In Java
- * an attempt to modify a collection on a HashMap or LinkedHashMap while iterating
- * through it (except by using the "remove" method on the Iterator object itself) results in a
- * ConcurrentModificationException. JavaScript Maps and Sets explicitly allow
- * the collection to be modified, or even cleared completely, while iterators
- * exist, and even lets an iterator keep on iterating on a collection that was
- * empty when it was created..
+ * Removed entries are left in place as tombstones until the arrays fill up or
+ * most entries are gone, at which point the live entries are compacted to the
+ * front. This matters because JavaScript handling of the iterator is
+ * completely different from the way that Java does it. In Java an attempt to
+ * modify a collection on a HashMap or LinkedHashMap while iterating through it
+ * (except by using the "remove" method on the Iterator object itself) results
+ * in a ConcurrentModificationException. JavaScript Maps and Sets explicitly
+ * allow the collection to be modified, or even cleared completely, while
+ * iterators exist, and even lets an iterator keep on iterating on a collection
+ * that was empty when it was created. Iterators therefore hold an entry
+ * position, and every compaction leaves a {@link Generation} behind that tells
+ * them how to move it.
  */
 public class Hashtable implements Iterable<Hashtable.Entry> {
 	/**
-	 * One entry in the hash table. Override equals and hashcode because this is
-	 * another area in which JavaScript and Java differ. This entry also becomes a
-	 * node in the linked list.
+	 * Key and value of one entry, as returned by the iterator.
 	 */
-
 	public static final class Entry {
-		private final Context localContext;
-		private final int hashCode;
-		Object key;
-		Object value;
-		private boolean deleted;
-		private Entry next;
-		private Entry prev;
-
-		Entry(Context cx) {
-			localContext = cx;
-			hashCode = 0;
-		}
-
-		Entry(Context cx, Object k, Object value) {
-			localContext = cx;
-
-			if ((k instanceof Number) && (!(k instanceof Double))) {
-				// Hash comparison won't work if we don't do this
-				this.key = ((Number) k).doubleValue();
-			} else {
-				this.key = k;
-			}
-
-			if (key == null) {
-				hashCode = 0;
-			} else if (k.equals(ScriptRuntime.negativeZeroObj)) {
-				hashCode = 0;
-			} else {
-				hashCode = key.hashCode();
-			}
+		final Object key;
+		final Object value;
 
+		Entry(Object key, Object value) {
+			this.key = key;
 			this.value = value;
 		}
 
@@ -68,190 +43,318 @@ public class Hashtable implements Iterable<Hashtable.Entry> {
 		public Object value() {
 			return value;
 		}
+	}
 
-		/**
-		 * Zero out key and value and return old value.
-		 */
-		Object clear() {
-			final Object ret = value;
-			key = Undefined.INSTANCE;
-			value = Undefined.INSTANCE;
-			deleted = true;
-			return ret;
-		}
-
-		@Override
-		public int hashCode() {
-			return hashCode;
-		}
+	/**
+	 * Positions of entries that were compacted away when moving from this
+	 * generation to the next one. Only iterators created before a compaction
+	 * keep older generations alive.
+	 */
+	private static final class Generation {
+		private Generation next;
+		// Sorted positions removed by the compaction, null if the table was cleared
+		private int[] removed;
 
-		@Override
-		public boolean equals(Object o) {
-			if (o == null) {
-				return false;
-			}
-			try {
-				return ScriptRuntime.sameZero(localContext, key, ((Entry) o).key);
-			} catch (ClassCastException cce) {
-				return false;
+		private int remap(int pos) {
+			if (removed == null) {
+				return 0;
 			}
+
+			int i = Arrays.binarySearch(removed, pos);
+			// Entries before pos that were removed shift it down, including pos itself
+			return pos - (i >= 0 ? i : -i - 1);
 		}
 	}
 
-	// The iterator for this class works directly on the linked list so that it implements
+	// The iterator for this class works directly on the entry arrays so that it implements
 	// the specified iteration behavior, which is very different from Java.
-	private final static class Iter implements Iterator<Entry> {
-		private Entry pos;
-
-		Iter(Context cx, Entry start) {
-			// Keep the logic simpler by having a dummy at the start
-			Entry dummy = makeDummy(cx);
-			dummy.next = start;
-			this.pos = dummy;
+	private final class Iter implements Iterator<Entry> {
+		private Generation generation;
+		private int pos;
+
+		Iter() {
+			if (Hashtable.this.generation == null) {
+				Hashtable.this.generation = new Generation();
+			}
+
+			generation = Hashtable.this.generation;
 		}
 
 		private void skipDeleted() {
-			// Skip forward past deleted elements, which could appear due to
-			// "delete" or a "clear" operation after this iterator was created.
-			// End up just before the next non-deleted node.
-			while ((pos.next != null) && pos.next.deleted) {
-				pos = pos.next;
+			// Follow compactions and clear operations done after this iterator
+			// last moved, then skip forward past deleted elements.
+			while (generation.next != null) {
+				pos = generation.remap(pos);
+				generation = generation.next;
+			}
+
+			while (pos < used && keys[pos] == DELETED) {
+				pos++;
 			}
 		}
 
 		@Override
 		public boolean hasNext() {
 			skipDeleted();
-			return ((pos != null) && (pos.next != null));
+			return pos < used;
 		}
 
 		@Override
 		public Entry next() {
 			skipDeleted();
-			if ((pos == null) || (pos.next == null)) {
+			if (pos >= used) {
 				throw new NoSuchElementException();
 			}
-			final Entry e = pos.next;
-			pos = pos.next;
+			final Entry e = new Entry(keys[pos], valueAt(pos));
+			pos++;
 			return e;
 		}
 	}
 
-	private static Entry makeDummy(Context cx) {
-		final Entry d = new Entry(cx);
-		d.clear();
-		return d;
-	}
+	private static final Object DELETED = new Object();
+	private static final int MIN_CAPACITY = 8;
 
-	private final Context localContext;
-	private final HashMap<Object, Entry> map = new HashMap<>();
-	private Entry first = null;
-	private Entry last = null;
+	private Object[] keys;
+	// null while every value is the same as its key, as is always the case for Set
+	private Object[] values;
+	private int[] hashes;
+	// Entry position + 1 for every occupied slot, 0 for empty ones
+	private int[] index;
+	private int indexShift;
+	// Number of positions taken in the entry arrays, including deleted entries
+	private int used;
+	private int size;
+	private Generation generation;
 
 	public Hashtable(Context cx) {
-		localContext = cx;
 	}
 
 	public int size() {
-		return map.size();
+		return size;
+	}
+
+	private static Object normalizeKey(Object key) {
+		if (key instanceof Number && !(key instanceof Double)) {
+			// Hash comparison won't work if we don't do this
+			return ((Number) key).doubleValue();
+		} else if (key instanceof CharSequence && !(key instanceof String)) {
+			return key.toString();
+		}
+		return key;
+	}
+
+	private static int hash(Object key) {
+		if (key == null) {
+			return 0;
+		} else if (key instanceof Double d) {
+			double v = d;
+			// -0 and +0 are the same key, and all NaNs are the same key
+			return v == 0D ? 0 : Double.hashCode(v);
+		}
+		return key.hashCode();
+	}
+
+	private static boolean keysEqual(Context cx, Object a, Object b) {
+		if (a == b) {
+			return true;
+		} else if (a instanceof Double x && b instanceof Double y) {
+			double dx = x;
+			double dy = y;
+			return dx == dy || dx != dx && dy != dy;
+		} else if (a instanceof String && b instanceof String) {
+			return a.equals(b);
+		}
+		return ScriptRuntime.sameZero(cx, a, b);
+	}
+
+	private int slot(int hash) {
+		// Fibonacci hashing spreads the low-entropy hashes of small integers and doubles
+		return (hash * 0x9E3779B9) >>> indexShift;
+	}
+
+	private Object valueAt(int pos) {
+		return values == null ? keys[pos] : values[pos];
+	}
+
+	/**
+	 * Returns the entry position of the key, or -1.
+	 */
+	private int find(Context cx, Object key, int hash) {
+		if (size == 0) {
+			return -1;
+		}
+
+		int mask = index.length - 1;
+		for (int i = slot(hash); ; i = (i + 1) & mask) {
+			int e = index[i] - 1;
+			if (e < 0) {
+				return -1;
+			} else if (hashes[e] == hash) {
+				Object k = keys[e];
+				if (k != DELETED && keysEqual(cx, k, key)) {
+					return e;
+				}
+			}
+		}
+	}
+
+	public void put(Context cx, Object k, Object value) {
+		final Object key = normalizeKey(k);
+		final int hash = hash(key);
+		if (value == k) {
+			// Keep the value array unallocated for Set
+			value = key;
+		}
+		int e = find(cx, key, hash);
+		if (e >= 0) {
+			// Update the existing value and keep it in the same place
+			setValue(e, value);
+			return;
+		}
+
+		if (keys == null) {
+			resize(MIN_CAPACITY);
+		} else if (used == keys.length) {
+			// Grow only if the table is mostly live, otherwise compacting is enough
+			resize(size >= keys.length / 2 ? keys.length * 2 : keys.length);
+		}
+
+		e = used++;
+		keys[e] = key;
+		hashes[e] = hash;
+		setValue(e, value);
+		insertIndex(e, hash);
+		size++;
 	}
 
-	public void put(Context cx, Object key, Object value) {
-		final Entry nv = new Entry(cx, key, value);
-		final Entry ev = map.putIfAbsent(nv, nv);
-		if (ev == null) {
-			// New value -- insert to end of doubly-linked list
-			if (first == null) {
-				first = last = nv;
-			} else {
-				last.next = nv;
-				nv.prev = last;
-				last = nv;
+	private void setValue(int e, Object value) {
+		if (values == null) {
+			if (value == keys[e]) {
+				return;
 			}
-		} else {
-			// Update the existing value and keep it in the same place in the list
-			ev.value = value;
+			values = Arrays.copyOf(keys, keys.length);
 		}
+		values[e] = value;
 	}
 
-	public Object get(Context cx, Object key) {
-		final Entry e = new Entry(cx, key, null);
-		final Entry v = map.get(e);
-		if (v == null) {
-			return null;
+	private void insertIndex(int e, int hash) {
+		int mask = index.length - 1;
+		int i = slot(hash);
+		while (index[i] != 0) {
+			int o = index[i] - 1;
+			if (keys[o] == DELETED) {
+				// Reuse slots of deleted entries
+				break;
+			}
+			i = (i + 1) & mask;
 		}
-		return v.value;
+		index[i] = e + 1;
+	}
+
+	public Object get(Context cx, Object key) {
+		key = normalizeKey(key);
+		int e = find(cx, key, hash(key));
+		return e < 0 ? null : valueAt(e);
 	}
 
 	public boolean has(Context cx, Object key) {
-		final Entry e = new Entry(cx, key, null);
-		return map.containsKey(e);
+		key = normalizeKey(key);
+		return find(cx, key, hash(key)) >= 0;
 	}
 
 	public Object delete(Context cx, Object key) {
-		final Entry e = new Entry(cx, key, null);
-		final Entry v = map.remove(e);
-		if (v == null) {
+		key = normalizeKey(key);
+		int e = find(cx, key, hash(key));
+		if (e < 0) {
 			return null;
 		}
 
-		// To keep existing iterators moving forward as specified in EC262,
-		// we will remove the "prev" pointers from the list but leave the "next"
-		// pointers intact. Once we do that, then the only things pointing to
-		// the deleted nodes are existing iterators. Once those are gone, then
-		// these objects will be GCed.
-		// This way, new iterators will not "see" the deleted elements, and
-		// existing iterators will continue from wherever they left off to
-		// continue iterating in insertion order.
-		if (v == first) {
-			if (v == last) {
-				// Removing the only element. Leave it as a dummy or existing iterators
-				// will never stop.
-				v.clear();
-				v.prev = null;
-			} else {
-				first = v.next;
-				first.prev = null;
-				if (first.next != null) {
-					first.next.prev = first;
-				}
-			}
-		} else {
-			final Entry prev = v.prev;
-			prev.next = v.next;
-			v.prev = null;
-			if (v.next != null) {
-				v.next.prev = prev;
-			} else {
-				assert (v == last);
-				last = prev;
-			}
+		// Leave the entry in place so existing iterators and the index slot
+		// pointing at it keep working until the next compaction
+		Object ret = valueAt(e);
+		keys[e] = DELETED;
+		if (values != null) {
+			values[e] = null;
 		}
-		// Still clear the node in case it is in the chain of some iterator
-		return v.clear();
+		size--;
+
+		if (size == 0) {
+			clear(cx);
+		} else if (keys.length > MIN_CAPACITY && size < keys.length / 4) {
+			resize(keys.length / 2);
+		}
+
+		return ret;
 	}
 
 	public void clear(Context cx) {
-		// Zero out all the entries so that existing iterators will skip them all
-		Iterator<Entry> it = iterator();
-		it.forEachRemaining(Entry::clear);
-
-		// Replace the existing list with a dummy, and make it the last node
-		// of the current list. If new nodes are added now, existing iterators
-		// will drive forward right into the new list. If they are not, then
-		// nothing is referencing the old list and it'll get GCed.
-		if (first != null) {
-			Entry dummy = makeDummy(cx);
-			last.next = dummy;
-			first = last = dummy;
+		if (used == 0) {
+			return;
+		}
+
+		if (generation != null) {
+			// Existing iterators continue with whatever is added next
+			generation.removed = null;
+			generation = generation.next = new Generation();
+		}
+
+		keys = null;
+		values = null;
+		hashes = null;
+		index = null;
+		used = 0;
+		size = 0;
+	}
+
+	/**
+	 * Moves live entries to the front of arrays of the new capacity and rebuilds the index.
+	 */
+	private void resize(int capacity) {
+		Object[] oldKeys = keys;
+		Object[] oldValues = values;
+		int[] oldHashes = hashes;
+		int oldUsed = used;
+
+		keys = new Object[capacity];
+		values = oldValues == null ? null : new Object[capacity];
+		hashes = new int[capacity];
+		index = new int[capacity * 2];
+		indexShift = Integer.numberOfLeadingZeros(capacity * 2) + 1;
+		used = 0;
+
+		if (oldKeys == null) {
+			return;
+		}
+
+		int[] removed = generation == null || size == oldUsed ? null : new int[oldUsed - size];
+		int r = 0;
+
+		for (int i = 0; i < oldUsed; i++) {
+			Object k = oldKeys[i];
+			if (k == DELETED) {
+				if (removed != null) {
+					removed[r++] = i;
+				}
+				continue;
+			}
+
+			int e = used++;
+			keys[e] = k;
+			hashes[e] = oldHashes[i];
+			if (oldValues != null) {
+				values[e] = oldValues[i];
+			}
+			insertIndex(e, oldHashes[i]);
 		}
 
-		// Now we can clear the actual hashtable!
-		map.clear();
+		if (removed != null) {
+			generation.removed = removed;
+			generation = generation.next = new Generation();
+		}
 	}
 
 	@Override
 	public Iterator<Entry> iterator() {
-		return new Iter(localContext, first);
+		return new Iter();
 	}
 }
@@ -61,7 +61,11 @@ import dev.latvian.mods.rhino.ast.WithStatement;
 import dev.latvian.mods.rhino.ast.Yield;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This class rewrites the parse tree into an IR suitable for codegen.
@@ -137,12 +141,6 @@ public final class IRFactory extends Parser {
 		fnNode.setFunctionType(functionType);
 		fnNode.addChildToBack(statements);
 
-		int functionCount = fnNode.getFunctionCount();
-		if (functionCount != 0) {
-			// Functions containing other functions require activation objects
-			fnNode.setRequiresActivation();
-		}
-
 		if (functionType == FunctionNode.FUNCTION_EXPRESSION) {
 			Name name = fnNode.getFunctionName();
 			if (name != null && name.length() != 0 && fnNode.getSymbol(name.getIdentifier()) == null) {
@@ -159,6 +157,11 @@ public final class IRFactory extends Parser {
 			}
 		}
 
+		if (fnNode.getFunctionCount() != 0 && nestedFunctionsUseActivation(fnNode)) {
+			// Functions containing closures over their variables require activation objects
+			fnNode.setRequiresActivation();
+		}
+
 		// Add return to end if needed.
 		Node lastStmt = statements.getLastChild();
 		if (lastStmt == null || lastStmt.getType() != Token.RETURN) {
@@ -170,6 +173,48 @@ public final class IRFactory extends Parser {
 		return result;
 	}
 
+	/**
+	 * Returns true unless every function nested in fnNode is a function
+	 * expression that never mentions a variable of fnNode, "arguments" or
+	 * eval. Only then can the closures skip fnNode's scope and all of its
+	 * variables stay in frame registers.
+	 */
+	private static boolean nestedFunctionsUseActivation(FunctionNode fnNode) {
+		Set<String> names = new HashSet<>();
+		names.add("arguments");
+		for (AstSymbol symbol : fnNode.getSymbols()) {
+			names.add(symbol.getName());
+		}
+		for (int i = 0; i < fnNode.getFunctionCount(); i++) {
+			FunctionNode nested = fnNode.getFunctionNode(i);
+			int type = nested.getFunctionType();
+			if (type != FunctionNode.FUNCTION_EXPRESSION && type != FunctionNode.ARROW_FUNCTION || referencesAnyName(nested, names)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean referencesAnyName(Node parent, Set<String> names) {
+		if (parent instanceof ScriptNode fn) {
+			for (int i = 0; i < fn.getFunctionCount(); i++) {
+				if (referencesAnyName(fn.getFunctionNode(i), names)) {
+					return true;
+				}
+			}
+		}
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNext()) {
+			int type = node.getType();
+			if ((type == Token.NAME || type == Token.BINDNAME || type == Token.TYPEOFNAME) && names.contains(node.getString())) {
+				return true;
+			}
+			if (node.getIntProp(Node.SPECIALCALL_PROP, Node.NON_SPECIALCALL) != Node.NON_SPECIALCALL || referencesAnyName(node, names)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private static Node createFor(Scope loop, Node init, Node test, Node incr, Node body) {
 		if (init.getType() == Token.LET) {
 			// rewrite "for (let i=s; i < N; i++)..." as
@@ -309,6 +354,17 @@ public final class IRFactory extends Parser {
 					child.setType(Token.TYPEOFNAME);
 					return child;
 				}
+				switch (childType) {
+					case Token.NUMBER:
+						return Node.newString("number");
+					case Token.STRING:
+						return Node.newString("string");
+					case Token.TRUE:
+					case Token.FALSE:
+						return Node.newString("boolean");
+					case Token.NULL:
+						return Node.newString("object");
+				}
 				break;
 			case Token.BITNOT:
 				if (childType == Token.NUMBER) {
@@ -458,6 +514,61 @@ public final class IRFactory extends Parser {
 				}
 				break;
 
+			case Token.MOD:
+			case Token.POW:
+				if (left.type == Token.NUMBER && right.type == Token.NUMBER) {
+					double ld = left.getDouble();
+					double rd = right.getDouble();
+					left.setDouble(nodeType == Token.MOD ? ld % rd : Math.pow(ld, rd));
+					return left;
+				}
+				break;
+
+			case Token.BITAND:
+			case Token.BITOR:
+			case Token.BITXOR:
+			case Token.LSH:
+			case Token.RSH:
+			case Token.URSH:
+				if (left.type == Token.NUMBER && right.type == Token.NUMBER) {
+					int li = ScriptRuntime.toInt32(left.getDouble());
+					int ri = ScriptRuntime.toInt32(right.getDouble());
+					left.setDouble(switch (nodeType) {
+						case Token.BITAND -> li & ri;
+						case Token.BITOR -> li | ri;
+						case Token.BITXOR -> li ^ ri;
+						case Token.LSH -> li << ri;
+						case Token.RSH -> li >> ri;
+						default -> ScriptRuntime.toUint32(left.getDouble()) >>> (ri & 0x1F);
+					});
+					return left;
+				}
+				break;
+
+			case Token.EQ:
+			case Token.NE:
+			case Token.SHEQ:
+			case Token.SHNE:
+			case Token.LT:
+			case Token.LE:
+			case Token.GT:
+			case Token.GE: {
+				// Comparisons of primitive literals have no side effects
+				Object l = getLiteralValue(left);
+				Object r = getLiteralValue(right);
+				if (l != Scriptable.NOT_FOUND && r != Scriptable.NOT_FOUND) {
+					boolean result = switch (nodeType) {
+						case Token.EQ -> ScriptRuntime.eq(cx, l, r);
+						case Token.NE -> !ScriptRuntime.eq(cx, l, r);
+						case Token.SHEQ -> ScriptRuntime.shallowEq(cx, l, r);
+						case Token.SHNE -> !ScriptRuntime.shallowEq(cx, l, r);
+						default -> ScriptRuntime.compare(cx, l, r, nodeType);
+					};
+					return new Node(result ? Token.TRUE : Token.FALSE);
+				}
+				break;
+			}
+
 			case Token.AND: {
 				// Since x && y gives x, not false, when Boolean(x) is false,
 				// and y, not Boolean(y), when Boolean(x) is true, x && y
@@ -525,6 +636,32 @@ public final class IRFactory extends Parser {
 		return null;
 	}
 
+	/**
+	 * Returns the value of a primitive literal node, or {@link Scriptable#NOT_FOUND}.
+	 */
+	private static Object getLiteralValue(Node node) {
+		return switch (node.getType()) {
+			case Token.NUMBER -> node.getDouble();
+			case Token.STRING -> node.getString();
+			case Token.TRUE -> Boolean.TRUE;
+			case Token.FALSE -> Boolean.FALSE;
+			case Token.NULL -> null;
+			default -> Scriptable.NOT_FOUND;
+		};
+	}
+
+	/**
+	 * Returns a new node with the value of a primitive literal node, or null.
+	 */
+	private static Node copyLiteral(Node node) {
+		return switch (node.getType()) {
+			case Token.NUMBER -> Node.newNumber(node.getDouble());
+			case Token.STRING -> Node.newString(node.getString());
+			case Token.TRUE, Token.FALSE, Token.NULL -> new Node(node.getType());
+			default -> null;
+		};
+	}
+
 	// Check if Node always mean true or false in boolean context
 	private static int isAlwaysDefinedBoolean(Node node) {
 		switch (node.getType()) {
@@ -533,6 +670,8 @@ public final class IRFactory extends Parser {
 				return ALWAYS_FALSE_BOOLEAN;
 			case Token.TRUE:
 				return ALWAYS_TRUE_BOOLEAN;
+			case Token.STRING:
+				return node.getString().isEmpty() ? ALWAYS_FALSE_BOOLEAN : ALWAYS_TRUE_BOOLEAN;
 			case Token.NUMBER: {
 				double num = node.getDouble();
 				if (!Double.isNaN(num) && num != 0.0) {
@@ -544,6 +683,9 @@ public final class IRFactory extends Parser {
 		return 0;
 	}
 
+	// Literal values of const declarations, see transformName
+	private final Map<AstSymbol, Node> constants = new HashMap<>();
+
 	public IRFactory(Context cx) {
 		super(cx);
 	}
@@ -572,7 +714,8 @@ public final class IRFactory extends Parser {
 	// Another possibility:  create AstTransformer interface and adapter.
 	public Node transform(AstNode node) {
 		return switch (node.getType()) {
-			case Token.EMPTY, Token.COMMENT, Token.BREAK, Token.NAME, Token.TRUE, Token.FALSE, Token.THIS, Token.NULL, Token.NUMBER -> node;
+			case Token.EMPTY, Token.COMMENT, Token.BREAK, Token.TRUE, Token.FALSE, Token.THIS, Token.NULL, Token.NUMBER -> node;
+			case Token.NAME -> node instanceof Name name ? transformName(name) : node;
 			case Token.ARRAYCOMP -> transformArrayComp((ArrayComprehension) node);
 			case Token.ARRAYLIT -> transformArrayLiteral((ArrayLiteral) node);
 			case Token.BLOCK -> transformBlock(node);
@@ -1012,6 +1155,75 @@ public final class IRFactory extends Parser {
 		return createBinary(node.getType(), left, right, cx);
 	}
 
+	/**
+	 * Replaces reads of a const declared with a literal value by the value. The declaration
+	 * must have been transformed already and be a statement directly in the block that
+	 * declares the name, so it always runs before the read. Reads in with statements and
+	 * in function declarations are left alone, as they might see a different binding or,
+	 * being hoisted, run before the declaration.
+	 */
+	private Node transformName(Name name) {
+		if (constants.isEmpty() || !isReadOnly(name)) {
+			return name;
+		}
+
+		Scope scope = name.getDefiningScope();
+		Node value = scope == null ? null : constants.get(scope.getSymbol(name.getIdentifier()));
+
+		if (value == null) {
+			return name;
+		}
+
+		for (AstNode n = name.getParent(); n != scope; n = n.getParent()) {
+			if (n == null || n instanceof WithStatement || n instanceof FunctionNode fn && fn.getFunctionType() != FunctionNode.FUNCTION_EXPRESSION && fn.getFunctionType() != FunctionNode.ARROW_FUNCTION) {
+				return name;
+			}
+		}
+
+		return copyLiteral(value);
+	}
+
+	/**
+	 * Whether the node is only used as a value where it appears, and not assigned,
+	 * deleted or called.
+	 */
+	private static boolean isReadOnly(AstNode node) {
+		AstNode parent = node.getParent();
+
+		if (parent == null) {
+			return false;
+		} else if (parent.getClass() == InfixExpression.class || parent instanceof ConditionalExpression) {
+			return true;
+		} else if (parent instanceof ParenthesizedExpression) {
+			return isReadOnly(parent);
+		} else if (parent instanceof UnaryExpression u) {
+			return switch (u.getType()) {
+				case Token.NOT, Token.NEG, Token.POS, Token.BITNOT, Token.TYPEOF, Token.VOID -> true;
+				default -> false;
+			};
+		} else if (parent instanceof FunctionCall call) {
+			return call.getTarget() != node;
+		} else if (parent instanceof IfStatement s) {
+			return s.getCondition() == node;
+		} else if (parent instanceof WhileLoop s) {
+			return s.getCondition() == node;
+		} else if (parent instanceof DoLoop s) {
+			return s.getCondition() == node;
+		} else if (parent instanceof ForLoop s) {
+			return s.getCondition() == node;
+		} else if (parent instanceof SwitchStatement s) {
+			return s.getExpression() == node;
+		} else if (parent instanceof SwitchCase s) {
+			return s.getExpression() == node;
+		} else if (parent instanceof ElementGet s) {
+			return s.getElement() == node;
+		} else if (parent instanceof VariableInitializer s) {
+			return s.getInitializer() == node;
+		}
+
+		return parent instanceof ReturnStatement;
+	}
+
 	private Node transformLabeledStatement(LabeledStatement ls) {
 		Label label = ls.getFirstLabel();
 		Node statement = transform(ls.getStatement());
@@ -1320,6 +1532,10 @@ public final class IRFactory extends Parser {
 				right = transform(init);
 			}
 
+			if (node.getType() == Token.CONST && right != null && target instanceof Name name) {
+				recordConstant(node, name, right);
+			}
+
 			if (var.isDestructuring()) {
 				if (right == null) {  // TODO:  should this ever happen?
 					node.addChildToBack(left);
@@ -1337,6 +1553,22 @@ public final class IRFactory extends Parser {
 		return node;
 	}
 
+	private void recordConstant(VariableDeclaration node, Name name, Node value) {
+		Node literal = copyLiteral(value);
+		Scope scope = name.getDefiningScope();
+
+		if (literal == null || scope == null) {
+			return;
+		}
+
+		AstNode parent = node.getParent();
+
+		// Only declarations that run unconditionally whenever the rest of the block does
+		if (parent == scope || scope instanceof FunctionNode fn && parent == fn.getBody()) {
+			constants.put(scope.getSymbol(name.getIdentifier()), literal);
+		}
+	}
+
 	private Node transformWhileLoop(WhileLoop loop) {
 		loop.setType(Token.LOOP);
 		pushScope(loop);
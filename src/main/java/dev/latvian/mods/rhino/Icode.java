@@ -141,8 +141,29 @@ abstract class Icode {
 	static final int// Call to GetTemplateLiteralCallSite
 		Icode_TEMPLATE_LITERAL_CALLSITE = -67;
 
+	static final int// Access to a variable of an enclosing function by (depth, index)
+		Icode_GETUPVAR = -68;
+	static final int Icode_SETUPVAR = -69;
+
+	static final int// Access to a global name through a cached property cell
+		Icode_GETGLOBAL = -70;
+	static final int Icode_GLOBAL_AND_THIS = -71;
+
+	static final int// Property read with the string index as operand instead of a REG_STR prefix
+		Icode_GETPROP_STR = -72;
+
+	static final int// Store to a variable followed by POP
+		Icode_SETVAR1_POP = -73;
+
+	static final int// Increment or decrement of a variable whose result is popped
+		Icode_VAR_INC_DEC_POP = -74;
+
+	static final int// Comparison followed by IFEQ or IFNE
+		Icode_CMP_IFEQ = -75;
+	static final int Icode_CMP_IFNE = -76;
+
 	static final int// Last icode
-		MIN_ICODE = -67;
+		MIN_ICODE = -76;
 
 	static boolean validIcode(int icode) {
 		return MIN_ICODE <= icode && icode <= 0;
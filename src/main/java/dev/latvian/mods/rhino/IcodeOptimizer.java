@@ -0,0 +1,352 @@
+package dev.latvian.mods.rhino;
+
+/**
+ * Peephole pass over the icode of a single function, run by {@link CodeGenerator}
+ * once the code, exception table and long jumps of the function are final.
+ * <p>
+ * Frequent instruction sequences are fused into superinstructions, stores to
+ * variables that are never read are removed together with redundant line markers
+ * and jumps to the next instruction, and jumps to GOTO instructions are threaded to
+ * the final target. Instructions are never fused across a jump target or an
+ * exception table boundary, so every pc the interpreter can reach stays an
+ * instruction start, and the exception table and first line pc are relocated
+ * along with the jumps.
+ */
+final class IcodeOptimizer extends Icode {
+	// Limits how many GOTOs one jump is threaded through, which also stops on cycles
+	private static final int MAX_THREADING = 8;
+
+	private final InterpreterData idata;
+	private final byte[] code;
+	// Instruction length at every instruction start, 0 elsewhere
+	private final int[] length;
+	// Target of every jump instruction after threading
+	private final int[] target;
+	private final boolean[] label;
+	private boolean[] readVars;
+
+	private byte[] out;
+	private int top;
+	// New pc of every old instruction start and of the end of the code
+	private int[] newPc;
+	// New pc and old target of every jump written to out
+	private int[] jumps;
+	private int jumpCount;
+
+	private IcodeOptimizer(InterpreterData idata) {
+		this.idata = idata;
+		this.code = idata.itsICode;
+		this.length = new int[code.length];
+		this.target = new int[code.length];
+		this.label = new boolean[code.length + 1];
+	}
+
+	static void optimize(InterpreterData idata) {
+		var optimizer = new IcodeOptimizer(idata);
+
+		if (optimizer.decode()) {
+			optimizer.markLabels();
+			optimizer.emit();
+			optimizer.relocate();
+		}
+	}
+
+	/**
+	 * Returns the length of the instruction, or 0 if it is not known to this pass.
+	 */
+	private static int instructionLength(int op) {
+		return switch (op) {
+			case Icode_GETVAR1, Icode_SETVAR1, Icode_SETCONSTVAR1, Icode_REG_IND1, Icode_REG_STR1, Icode_VAR_INC_DEC, Icode_NAME_INC_DEC, Icode_PROP_INC_DEC, Icode_ELEM_INC_DEC, Icode_REF_INC_DEC, Token.CATCH_SCOPE -> 2;
+			case Icode_LINE, Icode_SHORTNUMBER, Icode_REG_IND2, Icode_REG_STR2, Icode_GENERATOR, Icode_GENERATOR_END, Icode_GENERATOR_RETURN, Icode_YIELD_STAR, Token.YIELD, Token.THROW, Token.GOTO, Token.IFEQ, Token.IFNE, Icode_IFEQ_POP, Icode_GOSUB -> 3;
+			case Icode_GETUPVAR, Icode_SETUPVAR, Icode_GETGLOBAL, Icode_GLOBAL_AND_THIS -> 4;
+			case Icode_INTNUMBER, Icode_CALLSPECIAL, Icode_REG_IND4, Icode_REG_STR4 -> 5;
+			// Dot query icodes jump backwards from LEAVEDQ, leave such code alone
+			case Icode_ENTERDQ, Icode_LEAVEDQ -> 0;
+			default -> validIcode(op) || validTokenCode(op) ? 1 : 0;
+		};
+	}
+
+	private static boolean isJump(int op) {
+		return op == Token.GOTO || op == Token.IFEQ || op == Token.IFNE || op == Icode_IFEQ_POP || op == Icode_GOSUB;
+	}
+
+	private int jumpTarget(int pc) {
+		int offset = Interpreter.getShort(code, pc + 1);
+		return offset != 0 ? pc + offset : idata.longJumps.getExistingInt(pc + 1);
+	}
+
+	/**
+	 * Splits the code into instructions and finds the variables that are read.
+	 * Returns false if the code contains anything this pass does not know about.
+	 */
+	private boolean decode() {
+		if (!idata.itsNeedsActivation) {
+			readVars = new boolean[idata.itsMaxVars];
+		}
+
+		int indexReg = -1;
+
+		for (int pc = 0; pc < code.length; ) {
+			int op = code[pc];
+			int len = instructionLength(op);
+
+			if (len == 0 || pc + len > code.length) {
+				return false;
+			}
+
+			length[pc] = len;
+
+			if (readVars != null) {
+				int var = switch (op) {
+					case Icode_GETVAR1 -> 0xFF & code[pc + 1];
+					case Token.GETVAR, Icode_VAR_INC_DEC -> indexReg;
+					default -> -1;
+				};
+
+				if (var >= 0 && var < readVars.length) {
+					readVars[var] = true;
+				} else if (var >= 0 || op == Token.GETVAR || op == Icode_VAR_INC_DEC) {
+					// Read through an index register value that isn't known here
+					readVars = null;
+				}
+
+				indexReg = switch (op) {
+					case Icode_REG_IND_C0, Icode_REG_IND_C1, Icode_REG_IND_C2, Icode_REG_IND_C3, Icode_REG_IND_C4, Icode_REG_IND_C5 -> Icode_REG_IND_C0 - op;
+					case Icode_REG_IND1 -> 0xFF & code[pc + 1];
+					case Icode_REG_IND2 -> Interpreter.getIndex(code, pc + 1);
+					case Icode_REG_IND4 -> Interpreter.getInt(code, pc + 1);
+					default -> -1;
+				};
+			}
+
+			pc += len;
+		}
+
+		for (int pc = 0; pc < code.length; pc += length[pc]) {
+			if (isJump(code[pc])) {
+				int t = jumpTarget(pc);
+
+				if (t < 0 || t >= code.length || length[t] == 0) {
+					return false;
+				}
+
+				target[pc] = t;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Threads jumps through GOTOs and marks every pc that can be reached other than
+	 * by falling through from the previous instruction.
+	 */
+	private void markLabels() {
+		for (int pc = 0; pc < code.length; pc += length[pc]) {
+			int op = code[pc];
+
+			if (!isJump(op)) {
+				continue;
+			}
+
+			if (op != Icode_GOSUB) {
+				int t = target[pc];
+
+				for (int i = 0; i < MAX_THREADING && code[t] == Token.GOTO && target[t] != pc; i++) {
+					t = target[t];
+				}
+
+				target[pc] = t;
+			}
+
+			label[target[pc]] = true;
+		}
+
+		int[] table = idata.itsExceptionTable;
+
+		if (table != null) {
+			for (int i = 0; i < table.length; i += Interpreter.EXCEPTION_SLOT_SIZE) {
+				label[table[i + Interpreter.EXCEPTION_TRY_START_SLOT]] = true;
+				label[table[i + Interpreter.EXCEPTION_TRY_END_SLOT]] = true;
+				label[table[i + Interpreter.EXCEPTION_HANDLER_SLOT]] = true;
+			}
+		}
+	}
+
+	/**
+	 * Whether stores to the variable can be dropped, which is never the case with an activation.
+	 */
+	private boolean isUnread(int var) {
+		return readVars != null && var >= 0 && var < readVars.length && !readVars[var];
+	}
+
+	/**
+	 * Returns the pc of the instruction after the one at pc, if it doesn't start at a label.
+	 */
+	private int next(int pc) {
+		int n = pc + length[pc];
+		return n < code.length && !label[n] ? n : -1;
+	}
+
+	private void emit() {
+		// Fusing a one byte string prefix and GETPROP grows the code by half at most
+		out = new byte[code.length + code.length / 2 + 1];
+		newPc = new int[code.length + 1];
+		jumps = new int[16];
+
+		for (int pc = 0; pc < code.length; ) {
+			newPc[pc] = top;
+			int op = code[pc];
+			int len = length[pc];
+			int n = next(pc);
+			int fused = n >= 0 ? fuse(pc, op, n) : 0;
+
+			if (fused != 0) {
+				// Pcs inside the fused instructions are never used, keep them mapped to its start
+				for (int p = pc + len; p < fused; p += length[p]) {
+					newPc[p] = newPc[pc];
+				}
+
+				pc = fused;
+				continue;
+			}
+
+			// Instructions at labels are kept so that different labels never end up at the same pc
+			if (!label[pc] && op == Icode_LINE && n >= 0 && code[n] == Icode_LINE) {
+				// Overwritten by the next line marker before anything can use it
+			} else if (!label[pc] && op == Token.GOTO && target[pc] == pc + len) {
+				// Jump to the next instruction
+			} else if (!label[pc] && op == Icode_SETVAR1 && isUnread(code[pc + 1])) {
+				// Dead store, SETVAR1 leaves the value on the stack
+			} else if (isJump(op)) {
+				addJump(op, target[pc]);
+			} else {
+				System.arraycopy(code, pc, out, top, len);
+				top += len;
+			}
+
+			pc += len;
+		}
+
+		newPc[code.length] = top;
+	}
+
+	/**
+	 * Writes a superinstruction for the instructions starting at pc and returns the
+	 * pc after them, or returns 0 if there is nothing to fuse.
+	 */
+	private int fuse(int pc, int op, int n) {
+		int nextOp = code[n];
+
+		switch (op) {
+			case Icode_REG_STR_C0, Icode_REG_STR_C1, Icode_REG_STR_C2, Icode_REG_STR_C3, Icode_REG_STR1, Icode_REG_STR2 -> {
+				if (nextOp == Token.GETPROP) {
+					int index = switch (op) {
+						case Icode_REG_STR1 -> 0xFF & code[pc + 1];
+						case Icode_REG_STR2 -> Interpreter.getIndex(code, pc + 1);
+						default -> Icode_REG_STR_C0 - op;
+					};
+
+					add(Icode_GETPROP_STR);
+					addUint16(index);
+					return n + length[n];
+				}
+			}
+			case Icode_REG_IND_C0, Icode_REG_IND_C1, Icode_REG_IND_C2, Icode_REG_IND_C3, Icode_REG_IND_C4, Icode_REG_IND_C5, Icode_REG_IND1 -> {
+				int n2 = nextOp == Icode_VAR_INC_DEC ? next(n) : -1;
+
+				if (n2 >= 0 && code[n2] == Icode_POP) {
+					int index = op == Icode_REG_IND1 ? 0xFF & code[pc + 1] : Icode_REG_IND_C0 - op;
+
+					add(Icode_VAR_INC_DEC_POP);
+					add(index);
+					add(code[n + 1]);
+					return n2 + length[n2];
+				}
+			}
+			case Icode_SETVAR1 -> {
+				if (nextOp == Icode_POP && !isUnread(code[pc + 1])) {
+					add(Icode_SETVAR1_POP);
+					add(code[pc + 1]);
+					return n + length[n];
+				}
+			}
+			case Token.LT, Token.LE, Token.GT, Token.GE, Token.EQ, Token.NE, Token.SHEQ, Token.SHNE -> {
+				if (nextOp == Token.IFEQ || nextOp == Token.IFNE) {
+					addJump(nextOp == Token.IFEQ ? Icode_CMP_IFEQ : Icode_CMP_IFNE, target[n]);
+					add(op);
+					return n + length[n];
+				}
+			}
+		}
+
+		return 0;
+	}
+
+	private void add(int value) {
+		out[top++] = (byte) value;
+	}
+
+	private void addUint16(int value) {
+		out[top++] = (byte) (value >>> 8);
+		out[top++] = (byte) value;
+	}
+
+	/**
+	 * Writes a jump, its offset is resolved by {@link #relocate()} once all new pcs are known.
+	 */
+	private void addJump(int op, int oldTarget) {
+		if (jumpCount == jumps.length) {
+			int[] tmp = new int[jumps.length * 2];
+			System.arraycopy(jumps, 0, tmp, 0, jumpCount);
+			jumps = tmp;
+		}
+
+		jumps[jumpCount++] = top;
+		jumps[jumpCount++] = oldTarget;
+		add(op);
+		addUint16(0);
+	}
+
+	private void relocate() {
+		UintMap longJumps = null;
+
+		for (int i = 0; i < jumpCount; i += 2) {
+			int pc = jumps[i];
+			int jumpPC = newPc[jumps[i + 1]];
+			int offset = jumpPC - pc;
+
+			if (offset == 0 || offset != (short) offset) {
+				if (longJumps == null) {
+					longJumps = new UintMap();
+				}
+
+				longJumps.put(pc + 1, jumpPC);
+				offset = 0;
+			}
+
+			out[pc + 1] = (byte) (offset >> 8);
+			out[pc + 2] = (byte) offset;
+		}
+
+		int[] table = idata.itsExceptionTable;
+
+		if (table != null) {
+			for (int i = 0; i < table.length; i += Interpreter.EXCEPTION_SLOT_SIZE) {
+				table[i + Interpreter.EXCEPTION_TRY_START_SLOT] = newPc[table[i + Interpreter.EXCEPTION_TRY_START_SLOT]];
+				table[i + Interpreter.EXCEPTION_TRY_END_SLOT] = newPc[table[i + Interpreter.EXCEPTION_TRY_END_SLOT]];
+				table[i + Interpreter.EXCEPTION_HANDLER_SLOT] = newPc[table[i + Interpreter.EXCEPTION_HANDLER_SLOT]];
+			}
+		}
+
+		if (idata.firstLinePC >= 0) {
+			// firstLinePC points to the operand of the first LINE, which is never fused
+			idata.firstLinePC = newPc[idata.firstLinePC - 1] + 1;
+		}
+
+		byte[] iCode = new byte[top];
+		System.arraycopy(out, 0, iCode, 0, top);
+		idata.itsICode = iCode;
+		idata.longJumps = longJumps;
+	}
+}
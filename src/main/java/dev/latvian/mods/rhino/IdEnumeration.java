@@ -92,7 +92,7 @@ public class IdEnumeration implements Consumer<Object> {
 	public void changeObject(Context cx) {
 		Object[] nids = null;
 		while (obj != null) {
-			nids = obj.getIds(cx);
+			nids = obj instanceof ScriptableObject so ? so.getSharedIds(cx) : obj.getIds(cx);
 			if (nids.length != 0) {
 				break;
 			}
@@ -9,6 +9,10 @@ package dev.latvian.mods.rhino;
 import dev.latvian.mods.rhino.ast.FunctionNode;
 import dev.latvian.mods.rhino.ast.ScriptNode;
 
+import com.sun.management.HotSpotDiagnosticMXBean;
+import com.sun.management.VMOption;
+
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -24,6 +28,11 @@ public final class Interpreter extends Icode implements Evaluator {
 	//            exception local and scope local
 	static final int EXCEPTION_SLOT_SIZE = 6;
 
+	// Exception type, see getExceptionState
+	private static final int EX_CATCH_STATE = 2; // Can execute JS catch
+	private static final int EX_FINALLY_STATE = 1; // Can execute JS finally
+	private static final int EX_NO_JS_STATE = 0; // Terminate JS execution
+
 	static {
 		// Checks for byte code consistencies, good compiler can eliminate them
 
@@ -37,6 +46,52 @@ public final class Interpreter extends Icode implements Evaluator {
 			System.err.println(str);
 			throw new IllegalStateException(str);
 		}
+
+		warnIfNotCompiled();
+	}
+
+	/**
+	 * Almost all script code runs in interpretLoop, which is only fast once C2 compiles it.
+	 * Its size is kept under the default HugeMethodLimit of 8000 bytes by moving rare opcodes
+	 * into helper methods, but JVM flags can still keep it interpreted or stuck in C1.
+	 */
+	private static void warnIfNotCompiled() {
+		try {
+			String reason = null;
+
+			if (String.valueOf(System.getProperty("java.vm.info")).contains("interpreted mode")) {
+				reason = "the JVM runs in interpreted mode (-Xint)";
+			} else {
+				HotSpotDiagnosticMXBean bean = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+
+				if (bean == null) {
+					return;
+				} else if ("false".equals(getVMOption(bean, "UseCompiler"))) {
+					reason = "the JIT compiler is disabled (-XX:-UseCompiler)";
+				} else if ("true".equals(getVMOption(bean, "TieredCompilation")) && !"true".equals(getVMOption(bean, "UseJVMCICompiler"))) {
+					String level = getVMOption(bean, "TieredStopAtLevel");
+
+					if (level != null && Integer.parseInt(level) < 4) {
+						reason = "C2 is disabled (-XX:TieredStopAtLevel=" + level + ")";
+					}
+				}
+			}
+
+			if (reason != null) {
+				System.err.println("[Rhino] Interpreter won't be compiled by the optimizing JIT compiler because " + reason + ", scripts will run several times slower");
+			}
+		} catch (Throwable ignored) {
+			// Not a HotSpot JVM or management isn't available, nothing to check
+		}
+	}
+
+	private static String getVMOption(HotSpotDiagnosticMXBean bean, String name) {
+		try {
+			VMOption option = bean.getVMOption(name);
+			return option == null ? null : option.getValue();
+		} catch (IllegalArgumentException ex) {
+			return null;
+		}
 	}
 
 	/**
@@ -81,6 +136,8 @@ public final class Interpreter extends Icode implements Evaluator {
 		/*final*/ int frameIndex;
 		// If true indicates read-only frame that is a part of continuation
 		boolean frozen;
+		// If true a generator keeps using the arrays of this frame, see releaseFrameArrays
+		boolean captured;
 		/*final*/ Object[] stack;
 		/*final*/ int[] stackAttributes;
 		/*final*/ double[] sDbl;
@@ -150,12 +207,13 @@ public final class Interpreter extends Icode implements Evaluator {
 			}
 
 			if (idata.itsNestedFunctions != null) {
-				if (idata.itsFunctionType != 0 && !idata.itsNeedsActivation) {
-					Kit.codeBug();
-				}
 				for (int i = 0; i < idata.itsNestedFunctions.length; i++) {
 					InterpreterData fdata = idata.itsNestedFunctions[i];
 					if (fdata.itsFunctionType == FunctionNode.FUNCTION_STATEMENT) {
+						// Only closures that do not capture anything can go without activation
+						if (idata.itsFunctionType != 0 && !idata.itsNeedsActivation) {
+							Kit.codeBug();
+						}
 						initFunction(cx, scope, fnOrScript, i);
 					}
 				}
@@ -169,9 +227,12 @@ public final class Interpreter extends Icode implements Evaluator {
 
 			// Initialize args, vars, locals and stack
 
-			stack = new Object[maxFrameArray];
-			stackAttributes = new int[maxFrameArray];
-			sDbl = new double[maxFrameArray];
+			FramePool pool = cx.framePool;
+			if (pool == null || !pool.take(this, maxFrameArray)) {
+				stack = new Object[maxFrameArray];
+				stackAttributes = new int[maxFrameArray];
+				sDbl = new double[maxFrameArray];
+			}
 
 			int varCount = idata.getParamAndVarCount();
 			for (int i = 0; i < varCount; i++) {
@@ -281,6 +342,68 @@ public final class Interpreter extends Icode implements Evaluator {
 		}
 	}
 
+	/**
+	 * Arrays of frames that returned, kept per context so that the next calls can reuse them.
+	 * Frames always return in the reverse order of their calls, so the most recently released
+	 * arrays are taken first and usually fit the next call from the same place.
+	 */
+	static final class FramePool {
+		private static final int MAX_FRAMES = 32;
+		// Large frames are rare and would keep a lot of memory alive
+		private static final int MAX_FRAME_ARRAY = 128;
+
+		private final Object[][] stacks = new Object[MAX_FRAMES][];
+		private final int[][] attributes = new int[MAX_FRAMES][];
+		private final double[][] dbls = new double[MAX_FRAMES][];
+		private int size;
+
+		private boolean take(CallFrame frame, int frameArray) {
+			if (size == 0 || stacks[size - 1].length < frameArray) {
+				return false;
+			}
+
+			size--;
+			frame.stack = stacks[size];
+			frame.stackAttributes = attributes[size];
+			frame.sDbl = dbls[size];
+			stacks[size] = null;
+			attributes[size] = null;
+			dbls[size] = null;
+			return true;
+		}
+
+		private void put(CallFrame frame) {
+			int length = frame.idata.itsMaxFrameArray;
+			if (size == MAX_FRAMES || length > MAX_FRAME_ARRAY) {
+				return;
+			}
+
+			// Values must not be kept alive, and reused frames expect cleared attributes
+			Arrays.fill(frame.stack, 0, length, null);
+			Arrays.fill(frame.stackAttributes, 0, length, 0);
+			stacks[size] = frame.stack;
+			attributes[size] = frame.stackAttributes;
+			dbls[size] = frame.sDbl;
+			size++;
+		}
+	}
+
+	private static void releaseFrameArrays(Context cx, CallFrame frame) {
+		// Generator frames and their copies share arrays that outlive the call
+		if (frame.captured || frame.frozen || frame.varSource != frame) {
+			return;
+		}
+
+		if (cx.framePool == null) {
+			cx.framePool = new FramePool();
+		}
+
+		cx.framePool.put(frame);
+		frame.stack = null;
+		frame.stackAttributes = null;
+		frame.sDbl = null;
+	}
+
 	private static boolean compareIdata(InterpreterData i1, InterpreterData i2) {
 		return i1 == i2;
 	}
@@ -297,15 +420,15 @@ public final class Interpreter extends Icode implements Evaluator {
 		return result;
 	}
 
-	private static int getShort(byte[] iCode, int pc) {
+	static int getShort(byte[] iCode, int pc) {
 		return (iCode[pc] << 8) | (iCode[pc + 1] & 0xFF);
 	}
 
-	private static int getIndex(byte[] iCode, int pc) {
+	static int getIndex(byte[] iCode, int pc) {
 		return ((iCode[pc] & 0xFF) << 8) | (iCode[pc + 1] & 0xFF);
 	}
 
-	private static int getInt(byte[] iCode, int pc) {
+	static int getInt(byte[] iCode, int pc) {
 		return (iCode[pc] << 24) | ((iCode[pc + 1] & 0xFF) << 16) | ((iCode[pc + 2] & 0xFF) << 8) | (iCode[pc + 3] & 0xFF);
 	}
 
@@ -372,6 +495,44 @@ public final class Interpreter extends Icode implements Evaluator {
 		return interpretLoop(cx, frame, null);
 	}
 
+	static Object startTask(Context cx, ScriptTask task, InterpretedFunction ifun, Scriptable scope, Scriptable thisObj, Object[] args) {
+		if (!cx.hasTopCallScope()) {
+			Kit.codeBug();
+		}
+
+		CallFrame frame = initFrame(cx, scope, thisObj, args, null, 0, args.length, ifun, null);
+		return interpretLoop(cx, frame, task);
+	}
+
+	static Object resumeTask(Context cx, ScriptTask task) {
+		CallFrame frame = (CallFrame) task.state;
+		task.state = null;
+
+		// Activations were left when the task was suspended, enter them again from the outermost frame
+		CallFrame[] frames = new CallFrame[frame.frameIndex + 1];
+		for (CallFrame f = frame; f != null; f = f.parentFrame) {
+			frames[f.frameIndex] = f;
+		}
+
+		for (CallFrame f : frames) {
+			enterFrame(cx, f, ScriptRuntime.EMPTY_OBJECTS, true);
+		}
+
+		return interpretLoop(cx, frame, task);
+	}
+
+	/**
+	 * Leaves the frames of a task that used up its budget, see {@link #resumeTask}.
+	 */
+	private static void suspendTask(Context cx, CallFrame frame, int stackTop, ScriptTask task) {
+		frame.savedStackTop = stackTop;
+		task.state = frame;
+
+		for (CallFrame f = frame; f != null; f = f.parentFrame) {
+			exitFrame(cx, f, null);
+		}
+	}
+
 	public static Object resumeGenerator(Context cx, Scriptable scope, int operation, Object savedState, Object value) {
 		CallFrame frame = (CallFrame) savedState;
 		GeneratorState generatorState = new GeneratorState(operation, value);
@@ -401,7 +562,8 @@ public final class Interpreter extends Icode implements Evaluator {
 		final Object DBL_MRK = UniqueTag.DOUBLE_MARK;
 		final Object undefined = Undefined.INSTANCE;
 
-		final boolean instructionCounting = (cx.instructionThreshold != 0);
+		// Tasks and quotas count instructions even without an observer threshold
+		final boolean instructionCounting = cx.instructionThreshold != 0 || cx.task != null || cx.quota != null;
 		// arbitrary number to add to instructionCount when calling
 		// other functions
 		final int INVOCATION_COST = 100;
@@ -428,6 +590,8 @@ public final class Interpreter extends Icode implements Evaluator {
 		// initializing indexReg.
 
 		GeneratorState generatorState = null;
+		// Only frames of this loop invocation can be suspended, not ones called from Java code
+		ScriptTask task = null;
 		if (throwable != null) {
 			if (throwable instanceof GeneratorState) {
 				generatorState = (GeneratorState) throwable;
@@ -435,6 +599,9 @@ public final class Interpreter extends Icode implements Evaluator {
 				// reestablish this call frame
 				enterFrame(cx, frame, ScriptRuntime.EMPTY_OBJECTS, true);
 				throwable = null;
+			} else if (throwable instanceof ScriptTask) {
+				task = (ScriptTask) throwable;
+				throwable = null;
 			} else {
 				// It should be continuation
 				Kit.codeBug();
@@ -498,6 +665,8 @@ public final class Interpreter extends Icode implements Evaluator {
 									// First time encountering this opcode: create new generator
 									// object and return
 									frame.pc--; // we want to come back here when we resume
+									// The generator frame keeps reading variables of this one
+									frame.captured = true;
 									CallFrame generatorFrame = captureFrameForGenerator(frame);
 									generatorFrame.frozen = true;
 									frame.result = new ES6Generator(frame.scope, generatorFrame.fnOrScript, generatorFrame, cx);
@@ -518,24 +687,9 @@ public final class Interpreter extends Icode implements Evaluator {
 								}
 								continue;
 							}
-							case Icode_GENERATOR_END: {
-								// throw StopIteration
-								frame.frozen = true;
-								int sourceLine = getIndex(iCode, frame.pc);
-								generatorState.returnedException = new JavaScriptException(cx, NativeIterator.getStopIterationObject(frame.scope, cx), frame.idata.itsSourceFile, sourceLine);
-								break Loop;
-							}
+							case Icode_GENERATOR_END:
 							case Icode_GENERATOR_RETURN: {
-								// throw StopIteration with the value of "return"
-								frame.frozen = true;
-								frame.result = stack[stackTop];
-								frame.resultDbl = sDbl[stackTop];
-								--stackTop;
-
-								NativeIterator.StopIteration si = new NativeIterator.StopIteration(cx, (frame.result == UniqueTag.DOUBLE_MARK) ? Double.valueOf(frame.resultDbl) : frame.result);
-
-								int sourceLine = getIndex(iCode, frame.pc);
-								generatorState.returnedException = new JavaScriptException(cx, si, frame.idata.itsSourceFile, sourceLine);
+								stackTop = doGeneratorReturn(cx, frame, op, stack, sDbl, stackTop, generatorState);
 								break Loop;
 							}
 							case Token.THROW: {
@@ -594,6 +748,16 @@ public final class Interpreter extends Icode implements Evaluator {
 									continue;
 								}
 								break jumplessRun;
+							case Icode_CMP_IFEQ:
+							case Icode_CMP_IFNE: {
+								boolean valBln = doCompareForJump(frame, iCode[frame.pc + 2], stack, sDbl, stackTop, cx);
+								stackTop -= 2;
+								if (valBln == (op == Icode_CMP_IFEQ)) {
+									break jumplessRun;
+								}
+								frame.pc += 3;
+								continue;
+							}
 							case Icode_IFEQ_POP:
 								if (!stack_boolean(frame, stackTop--, cx)) {
 									frame.pc += 2;
@@ -777,6 +941,16 @@ public final class Interpreter extends Icode implements Evaluator {
 								stack[stackTop] = ScriptRuntime.getObjectProp(cx, frame.scope, lhs, stringReg);
 								continue;
 							}
+							case Icode_GETPROP_STR: {
+								stringReg = strings[getIndex(iCode, frame.pc)];
+								frame.pc += 2;
+								Object lhs = stack[stackTop];
+								if (lhs == DBL_MRK) {
+									lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+								}
+								stack[stackTop] = ScriptRuntime.getObjectProp(cx, frame.scope, lhs, stringReg);
+								continue;
+							}
 							case Token.GETOPTIONAL: {
 								Object lhs = stack[stackTop];
 								if (lhs == DBL_MRK) {
@@ -825,13 +999,7 @@ public final class Interpreter extends Icode implements Evaluator {
 								continue;
 							}
 							case Token.SET_REF: {
-								Object value = stack[stackTop];
-								if (value == DBL_MRK) {
-									value = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-								}
-								--stackTop;
-								Ref ref = (Ref) stack[stackTop];
-								stack[stackTop] = ScriptRuntime.refSet(cx, frame.scope, ref, value);
+								stackTop = doRefSet(cx, frame, stack, sDbl, stackTop);
 								continue;
 							}
 							case Token.DEL_REF: {
@@ -903,9 +1071,15 @@ public final class Interpreter extends Icode implements Evaluator {
 								stackTop = doCallSpecial(cx, frame, stack, sDbl, stackTop, iCode, indexReg);
 								continue;
 							}
-							case Token.CALL:
-							case Icode_TAIL_CALL:
 							case Token.REF_CALL: {
+								if (instructionCounting) {
+									cx.instructionCount += INVOCATION_COST;
+								}
+								stackTop = doRefCall(cx, stack, sDbl, stackTop, indexReg);
+								continue;
+							}
+							case Token.CALL:
+							case Icode_TAIL_CALL: {
 								if (instructionCounting) {
 									cx.instructionCount += INVOCATION_COST;
 								}
@@ -917,11 +1091,6 @@ public final class Interpreter extends Icode implements Evaluator {
 								// are already Scriptable and Callable objects respectively
 								Callable fun = (Callable) stack[stackTop];
 								Scriptable funThisObj = (Scriptable) stack[stackTop + 1];
-								if (op == Token.REF_CALL) {
-									Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 2, indexReg);
-									stack[stackTop] = ScriptRuntime.callRef(cx, funThisObj, fun, outArgs);
-									continue;
-								}
 								Scriptable calleeScope = frame.scope;
 								if (frame.useActivation) {
 									calleeScope = ScriptableObject.getTopLevelScope(frame.scope);
@@ -958,26 +1127,10 @@ public final class Interpreter extends Icode implements Evaluator {
 									continue StateLoop;
 								}
 
-								if (fun instanceof IdFunctionObject ifun) {
-									// Bug 405654 -- make best effort to keep Function.apply and
-									// Function.call within this interpreter loop invocation
-									if (BaseFunction.isApplyOrCall(ifun)) {
-										Callable applyCallable = ScriptRuntime.getCallable(cx, funThisObj);
-										if (applyCallable instanceof InterpretedFunction iApplyCallable) {
-											frame = initFrameForApplyOrCall(cx, frame, indexReg, stack, sDbl, stackTop, op, calleeScope, ifun, iApplyCallable);
-											continue StateLoop;
-										}
-									}
-								}
-
-								// Bug 447697 -- make best effort to keep __noSuchMethod__ within this
-								// interpreter loop invocation
-								if (fun instanceof ScriptRuntime.NoSuchMethodShim noSuchMethodShim) {
-									// get the shim and the actual method
-									Callable noSuchMethodMethod = noSuchMethodShim.noSuchMethodMethod;
-									// if the method is in fact an InterpretedFunction
-									if (noSuchMethodMethod instanceof InterpretedFunction ifun) {
-										frame = initFrameForNoSuchMethod(cx, frame, indexReg, stack, sDbl, stackTop, op, funThisObj, calleeScope, noSuchMethodShim, ifun);
+								if (fun instanceof IdFunctionObject || fun instanceof ScriptRuntime.NoSuchMethodShim) {
+									CallFrame calleeFrame = initFrameForIndirectCall(cx, frame, indexReg, stack, sDbl, stackTop, op, fun, funThisObj, calleeScope);
+									if (calleeFrame != null) {
+										frame = calleeFrame;
 										continue StateLoop;
 									}
 								}
@@ -1008,15 +1161,7 @@ public final class Interpreter extends Icode implements Evaluator {
 									frame = calleeFrame;
 									continue StateLoop;
 								}
-								if (!(lhs instanceof Function fun)) {
-									if (lhs == DBL_MRK) {
-										lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-									}
-									throw ScriptRuntime.notFunctionError(cx, lhs);
-								}
-
-								Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 1, indexReg);
-								stack[stackTop] = fun.construct(cx, frame.scope, outArgs);
+								stack[stackTop] = doNew(cx, frame, lhs, stack, sDbl, stackTop, indexReg);
 								continue;
 							}
 							case Token.TYPEOF: {
@@ -1053,6 +1198,26 @@ public final class Interpreter extends Icode implements Evaluator {
 							case Token.NAME:
 								stack[++stackTop] = ScriptRuntime.name(cx, frame.scope, stringReg);
 								continue;
+							case Icode_GETUPVAR: {
+								ScriptableObject.Slot slot = getUpvarSlot(frame.scope, 0xFF & iCode[frame.pc], getIndex(iCode, frame.pc + 1), stringReg);
+								frame.pc += 3;
+								stack[++stackTop] = slot != null ? slot.value : ScriptRuntime.name(cx, frame.scope, stringReg);
+								continue;
+							}
+							case Icode_SETUPVAR: {
+								doSetUpvar(cx, frame, iCode, stack, sDbl, stackTop, stringReg);
+								frame.pc += 3;
+								continue;
+							}
+							case Icode_GETGLOBAL:
+								stack[++stackTop] = getGlobal(cx, frame, 0xFF & iCode[frame.pc], getIndex(iCode, frame.pc + 1), stringReg, false);
+								frame.pc += 3;
+								continue;
+							case Icode_GLOBAL_AND_THIS:
+								stack[++stackTop] = getGlobal(cx, frame, 0xFF & iCode[frame.pc], getIndex(iCode, frame.pc + 1), stringReg, true);
+								frame.pc += 3;
+								stack[++stackTop] = cx.lastStoredScriptable();
+								continue;
 							case Icode_NAME_INC_DEC:
 								stack[++stackTop] = ScriptRuntime.nameIncrDecr(cx, frame.scope, stringReg, iCode[frame.pc]);
 								++frame.pc;
@@ -1069,6 +1234,11 @@ public final class Interpreter extends Icode implements Evaluator {
 							case Token.SETVAR:
 								stackTop = doSetVar(cx, frame, stack, sDbl, stackTop, vars, varDbls, varAttributes, indexReg);
 								continue;
+							case Icode_SETVAR1_POP:
+								indexReg = iCode[frame.pc++];
+								stackTop = doSetVar(cx, frame, stack, sDbl, stackTop, vars, varDbls, varAttributes, indexReg);
+								stack[stackTop--] = null;
+								continue;
 							case Icode_GETVAR1:
 								indexReg = iCode[frame.pc++];
 								// fallthrough
@@ -1079,6 +1249,18 @@ public final class Interpreter extends Icode implements Evaluator {
 								stackTop = doVarIncDec(cx, frame, stack, sDbl, stackTop, vars, varDbls, varAttributes, indexReg);
 								continue;
 							}
+							case Icode_VAR_INC_DEC_POP: {
+								indexReg = 0xFF & iCode[frame.pc++];
+								if (!frame.useActivation && vars[indexReg] == DBL_MRK && (varAttributes[indexReg] & ScriptableObject.READONLY) == 0) {
+									// Number variable, the result is not needed
+									varDbls[indexReg] += (iCode[frame.pc] & Node.DECR_FLAG) == 0 ? 1.0 : -1.0;
+									++frame.pc;
+									continue;
+								}
+								stackTop = doVarIncDec(cx, frame, stack, sDbl, stackTop, vars, varDbls, varAttributes, indexReg);
+								stack[stackTop--] = null;
+								continue;
+							}
 							case Icode_ZERO:
 								++stackTop;
 								stack[stackTop] = DBL_MRK;
@@ -1120,21 +1302,7 @@ public final class Interpreter extends Icode implements Evaluator {
 								frame.scope = ScriptRuntime.leaveWith(frame.scope);
 								continue;
 							case Token.CATCH_SCOPE: {
-								// stack top: exception object
-								// stringReg: name of exception variable
-								// indexReg: local for exception scope
-								--stackTop;
-								indexReg += frame.localShift;
-
-								boolean afterFirstScope = (frame.idata.itsICode[frame.pc] != 0);
-								Throwable caughtException = (Throwable) stack[stackTop + 1];
-								Scriptable lastCatchScope;
-								if (!afterFirstScope) {
-									lastCatchScope = null;
-								} else {
-									lastCatchScope = (Scriptable) stack[indexReg];
-								}
-								stack[indexReg] = ScriptRuntime.newCatchScope(cx, frame.scope, caughtException, lastCatchScope, stringReg);
+								stackTop = doCatchScope(cx, frame, stack, stackTop, indexReg, stringReg);
 								++frame.pc;
 								continue;
 							}
@@ -1142,14 +1310,7 @@ public final class Interpreter extends Icode implements Evaluator {
 							case Token.ENUM_INIT_VALUES:
 							case Token.ENUM_INIT_ARRAY:
 							case Token.ENUM_INIT_VALUES_IN_ORDER: {
-								Object lhs = stack[stackTop];
-								if (lhs == DBL_MRK) {
-									lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-								}
-								--stackTop;
-								indexReg += frame.localShift;
-								int enumType = op == Token.ENUM_INIT_KEYS ? ScriptRuntime.ENUMERATE_KEYS : op == Token.ENUM_INIT_VALUES ? ScriptRuntime.ENUMERATE_VALUES : op == Token.ENUM_INIT_VALUES_IN_ORDER ? ScriptRuntime.ENUMERATE_VALUES_IN_ORDER : ScriptRuntime.ENUMERATE_ARRAY;
-								stack[indexReg] = ScriptRuntime.enumInit(cx, frame.scope, lhs, enumType);
+								stackTop = doEnumInit(cx, frame, op, stack, sDbl, stackTop, indexReg);
 								continue;
 							}
 							case Token.ENUM_NEXT:
@@ -1178,12 +1339,7 @@ public final class Interpreter extends Icode implements Evaluator {
 								stack[indexReg] = frame.scope;
 								continue;
 							case Icode_CLOSURE_EXPR:
-								InterpretedFunction fn = InterpretedFunction.createFunction(cx, frame.scope, frame.fnOrScript, indexReg);
-								if (fn.idata.itsFunctionType == FunctionNode.ARROW_FUNCTION) {
-									stack[++stackTop] = new ArrowFunction(cx, frame.scope, fn, frame.thisObj);
-								} else {
-									stack[++stackTop] = fn;
-								}
+								stack[++stackTop] = createClosure(cx, frame, indexReg);
 								continue;
 							case Icode_CLOSURE_STMT:
 								initFunction(cx, frame.scope, frame.fnOrScript, indexReg);
@@ -1215,51 +1371,19 @@ public final class Interpreter extends Icode implements Evaluator {
 								sDbl[stackTop] = i + 1;
 								continue;
 							}
-							case Icode_LITERAL_GETTER: {
-								Object value = stack[stackTop];
-								--stackTop;
-								int i = (int) sDbl[stackTop];
-								((Object[]) stack[stackTop])[i] = value;
-								((int[]) stack[stackTop - 1])[i] = -1;
-								sDbl[stackTop] = i + 1;
-								continue;
-							}
+							case Icode_LITERAL_GETTER:
 							case Icode_LITERAL_SETTER: {
-								Object value = stack[stackTop];
-								--stackTop;
-								int i = (int) sDbl[stackTop];
-								((Object[]) stack[stackTop])[i] = value;
-								((int[]) stack[stackTop - 1])[i] = +1;
-								sDbl[stackTop] = i + 1;
+								stackTop = doLiteralAccessor(op, stack, sDbl, stackTop);
 								continue;
 							}
 							case Token.ARRAYLIT:
 							case Icode_SPARE_ARRAYLIT:
 							case Token.OBJECTLIT: {
-								Object[] data = (Object[]) stack[stackTop];
-								--stackTop;
-								int[] getterSetters = (int[]) stack[stackTop];
-								Object val;
-								if (op == Token.OBJECTLIT) {
-									Object[] ids = (Object[]) frame.idata.literalIds[indexReg];
-									val = ScriptRuntime.newObjectLiteral(cx, frame.scope, ids, data, getterSetters);
-								} else {
-									int[] skipIndexces = null;
-									if (op == Icode_SPARE_ARRAYLIT) {
-										skipIndexces = (int[]) frame.idata.literalIds[indexReg];
-									}
-									val = ScriptRuntime.newArrayLiteral(cx, frame.scope, data, skipIndexces);
-								}
-								stack[stackTop] = val;
+								stackTop = doLiteral(cx, frame, op, stack, stackTop, indexReg);
 								continue;
 							}
 							case Icode_ENTERDQ: {
-								Object lhs = stack[stackTop];
-								if (lhs == DBL_MRK) {
-									lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
-								}
-								--stackTop;
-								frame.scope = ScriptRuntime.enterDotQuery(lhs, frame.scope, cx);
+								stackTop = doEnterDotQuery(cx, frame, stack, sDbl, stackTop);
 								continue;
 							}
 							case Icode_LEAVEDQ: {
@@ -1353,12 +1477,18 @@ public final class Interpreter extends Icode implements Evaluator {
 					}
 					if (instructionCounting) {
 						frame.pcPrevBranch = frame.pc;
+
+						if (task != null && task.isBudgetUsed()) {
+							suspendTask(cx, frame, stackTop, task);
+							break StateLoop;
+						}
 					}
 					continue;
 
 				} // end of Loop: for
 
 				exitFrame(cx, frame, null);
+				releaseFrameArrays(cx, frame);
 				interpreterResult = frame.result;
 				interpreterResultDbl = frame.resultDbl;
 				if (frame.parentFrame != null) {
@@ -1389,29 +1519,7 @@ public final class Interpreter extends Icode implements Evaluator {
 				Kit.codeBug();
 			}
 
-			// Exception type
-			final int EX_CATCH_STATE = 2; // Can execute JS catch
-			final int EX_FINALLY_STATE = 1; // Can execute JS finally
-			final int EX_NO_JS_STATE = 0; // Terminate JS execution
-
-			int exState;
-
-			if (generatorState != null && generatorState.operation == GeneratorState.GENERATOR_CLOSE && throwable == generatorState.value) {
-				exState = EX_FINALLY_STATE;
-			} else if (throwable instanceof JavaScriptException) {
-				exState = EX_CATCH_STATE;
-			} else if (throwable instanceof EcmaError) {
-				// an offical ECMA error object,
-				exState = EX_CATCH_STATE;
-			} else if (throwable instanceof EvaluatorException) {
-				exState = EX_CATCH_STATE;
-			} else if (throwable instanceof RuntimeException) {
-				exState = EX_FINALLY_STATE;
-			} else if (throwable instanceof Error) {
-				exState = EX_NO_JS_STATE;
-			} else {
-				exState = EX_FINALLY_STATE;
-			}
+			int exState = getExceptionState(generatorState, throwable);
 
 			if (instructionCounting) {
 				try {
@@ -1442,6 +1550,7 @@ public final class Interpreter extends Icode implements Evaluator {
 				// to parent and try to look there
 
 				exitFrame(cx, frame, throwable);
+				releaseFrameArrays(cx, frame);
 
 				frame = frame.parentFrame;
 				if (frame == null) {
@@ -1475,6 +1584,24 @@ public final class Interpreter extends Icode implements Evaluator {
 		return (interpreterResult != DBL_MRK) ? interpreterResult : ScriptRuntime.wrapNumber(interpreterResultDbl);
 	}
 
+	private static int getExceptionState(GeneratorState generatorState, Object throwable) {
+		if (generatorState != null && generatorState.operation == GeneratorState.GENERATOR_CLOSE && throwable == generatorState.value) {
+			return EX_FINALLY_STATE;
+		} else if (throwable instanceof JavaScriptException) {
+			return EX_CATCH_STATE;
+		} else if (throwable instanceof EcmaError) {
+			// an offical ECMA error object,
+			return EX_CATCH_STATE;
+		} else if (throwable instanceof EvaluatorException) {
+			return EX_CATCH_STATE;
+		} else if (throwable instanceof RuntimeException) {
+			return EX_FINALLY_STATE;
+		} else if (throwable instanceof Error) {
+			return EX_NO_JS_STATE;
+		}
+		return EX_FINALLY_STATE;
+	}
+
 	private static int doInOrInstanceof(Context cx, int op, Object[] stack, double[] sDbl, int stackTop) {
 		Object rhs = stack[stackTop];
 		if (rhs == UniqueTag.DOUBLE_MARK) {
@@ -1537,6 +1664,31 @@ public final class Interpreter extends Icode implements Evaluator {
 		return stackTop;
 	}
 
+	/**
+	 * Compares the values at stackTop - 1 and stackTop for {@link Icode#Icode_CMP_IFEQ} and {@link Icode#Icode_CMP_IFNE}.
+	 */
+	private static boolean doCompareForJump(CallFrame frame, int op, Object[] stack, double[] sDbl, int stackTop, Context cx) {
+		if (stack[stackTop - 1] == UniqueTag.DOUBLE_MARK && stack[stackTop] == UniqueTag.DOUBLE_MARK) {
+			double lDbl = sDbl[stackTop - 1];
+			double rDbl = sDbl[stackTop];
+			return switch (op) {
+				case Token.LT -> lDbl < rDbl;
+				case Token.LE -> lDbl <= rDbl;
+				case Token.GT -> lDbl > rDbl;
+				case Token.GE -> lDbl >= rDbl;
+				case Token.EQ, Token.SHEQ -> lDbl == rDbl;
+				case Token.NE, Token.SHNE -> lDbl != rDbl;
+				default -> throw Kit.codeBug();
+			};
+		}
+
+		return switch (op) {
+			case Token.EQ, Token.NE -> doEquals(stack, sDbl, stackTop - 1, cx) ^ (op == Token.NE);
+			case Token.SHEQ, Token.SHNE -> doShallowEquals(stack, sDbl, stackTop - 1, cx) ^ (op == Token.SHNE);
+			default -> (Boolean) stack[doCompare(frame, op, stack, sDbl, stackTop, cx)];
+		};
+	}
+
 	private static int doBitOp(CallFrame frame, int op, Object[] stack, double[] sDbl, int stackTop, Context cx) {
 		int lIntValue = stack_int32(frame, stackTop - 1, cx);
 		int rIntValue = stack_int32(frame, stackTop, cx);
@@ -1585,7 +1737,19 @@ public final class Interpreter extends Icode implements Evaluator {
 			value = ScriptRuntime.getObjectElem(cx, frame.scope, lhs, id);
 		} else {
 			double d = sDbl[stackTop + 1];
-			value = ScriptRuntime.getObjectIndex(cx, frame.scope, lhs, d);
+			int index = (int) d;
+			if (index == d && lhs instanceof NativeJavaArray javaArray) {
+				double[] doubles = javaArray.getDoubleArray();
+				if (doubles != null && 0 <= index && index < doubles.length) {
+					stack[stackTop] = UniqueTag.DOUBLE_MARK;
+					sDbl[stackTop] = doubles[index];
+					return stackTop;
+				}
+			}
+			value = index == d && lhs instanceof NativeArray array ? array.getDenseElement(index) : Scriptable.NOT_FOUND;
+			if (value == Scriptable.NOT_FOUND) {
+				value = ScriptRuntime.getObjectIndex(cx, frame.scope, lhs, d);
+			}
 		}
 		stack[stackTop] = value;
 		return stackTop;
@@ -1594,6 +1758,18 @@ public final class Interpreter extends Icode implements Evaluator {
 	private static int doSetElem(Context cx, CallFrame frame, Object[] stack, double[] sDbl, int stackTop) {
 		stackTop -= 2;
 		Object rhs = stack[stackTop + 2];
+		if (rhs == UniqueTag.DOUBLE_MARK && stack[stackTop + 1] == UniqueTag.DOUBLE_MARK && stack[stackTop] instanceof NativeJavaArray javaArray) {
+			// Numbers stored into a double[] stay unboxed
+			double[] doubles = javaArray.getDoubleArray();
+			double d = sDbl[stackTop + 1];
+			int index = (int) d;
+			if (doubles != null && index == d && 0 <= index && index < doubles.length) {
+				doubles[index] = sDbl[stackTop + 2];
+				stack[stackTop] = UniqueTag.DOUBLE_MARK;
+				sDbl[stackTop] = sDbl[stackTop + 2];
+				return stackTop;
+			}
+		}
 		if (rhs == UniqueTag.DOUBLE_MARK) {
 			rhs = ScriptRuntime.wrapNumber(sDbl[stackTop + 2]);
 		}
@@ -1607,7 +1783,12 @@ public final class Interpreter extends Icode implements Evaluator {
 			value = ScriptRuntime.setObjectElem(cx, frame.scope, lhs, id, rhs);
 		} else {
 			double d = sDbl[stackTop + 1];
-			value = ScriptRuntime.setObjectIndex(cx, frame.scope, lhs, d, rhs);
+			int index = (int) d;
+			if (index == d && lhs instanceof NativeArray array && array.setDenseElement(cx, index, rhs)) {
+				value = rhs;
+			} else {
+				value = ScriptRuntime.setObjectIndex(cx, frame.scope, lhs, d, rhs);
+			}
 		}
 		stack[stackTop] = value;
 		return stackTop;
@@ -1659,6 +1840,183 @@ public final class Interpreter extends Icode implements Evaluator {
 		return stackTop;
 	}
 
+	private static int doRefCall(Context cx, Object[] stack, double[] sDbl, int stackTop, int indexReg) {
+		// stack change: function thisObj arg0 .. argN -> result
+		// indexReg: number of arguments
+		stackTop -= 1 + indexReg;
+		Callable fun = (Callable) stack[stackTop];
+		Scriptable funThisObj = (Scriptable) stack[stackTop + 1];
+		Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 2, indexReg);
+		stack[stackTop] = ScriptRuntime.callRef(cx, funThisObj, fun, outArgs);
+		return stackTop;
+	}
+
+	/**
+	 * Returns the frame of the interpreted function that Function.prototype.apply, call
+	 * or __noSuchMethod__ would invoke, or null if the call has to go through Java.
+	 */
+	private static CallFrame initFrameForIndirectCall(Context cx, CallFrame frame, int indexReg, Object[] stack, double[] sDbl, int stackTop, int op, Callable fun, Scriptable funThisObj, Scriptable calleeScope) {
+		if (fun instanceof IdFunctionObject ifun) {
+			// Bug 405654 -- make best effort to keep Function.apply and
+			// Function.call within this interpreter loop invocation
+			if (BaseFunction.isApplyOrCall(ifun)) {
+				Callable applyCallable = ScriptRuntime.getCallable(cx, funThisObj);
+				if (applyCallable instanceof InterpretedFunction iApplyCallable) {
+					return initFrameForApplyOrCall(cx, frame, indexReg, stack, sDbl, stackTop, op, calleeScope, ifun, iApplyCallable);
+				}
+			}
+		}
+
+		// Bug 447697 -- make best effort to keep __noSuchMethod__ within this
+		// interpreter loop invocation
+		if (fun instanceof ScriptRuntime.NoSuchMethodShim noSuchMethodShim) {
+			// get the shim and the actual method
+			Callable noSuchMethodMethod = noSuchMethodShim.noSuchMethodMethod;
+			// if the method is in fact an InterpretedFunction
+			if (noSuchMethodMethod instanceof InterpretedFunction ifun) {
+				return initFrameForNoSuchMethod(cx, frame, indexReg, stack, sDbl, stackTop, op, funThisObj, calleeScope, noSuchMethodShim, ifun);
+			}
+		}
+
+		return null;
+	}
+
+	private static Object doNew(Context cx, CallFrame frame, Object lhs, Object[] stack, double[] sDbl, int stackTop, int indexReg) {
+		if (!(lhs instanceof Function fun)) {
+			if (lhs == UniqueTag.DOUBLE_MARK) {
+				lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+			}
+			throw ScriptRuntime.notFunctionError(cx, lhs);
+		}
+
+		Object[] outArgs = getArgsArray(stack, sDbl, stackTop + 1, indexReg);
+		return fun.construct(cx, frame.scope, outArgs);
+	}
+
+	private static int doGeneratorReturn(Context cx, CallFrame frame, int op, Object[] stack, double[] sDbl, int stackTop, GeneratorState generatorState) {
+		frame.frozen = true;
+		int sourceLine = getIndex(frame.idata.itsICode, frame.pc);
+		Object value;
+
+		if (op == Icode_GENERATOR_END) {
+			// throw StopIteration
+			value = NativeIterator.getStopIterationObject(frame.scope, cx);
+		} else {
+			// throw StopIteration with the value of "return"
+			frame.result = stack[stackTop];
+			frame.resultDbl = sDbl[stackTop];
+			--stackTop;
+			value = new NativeIterator.StopIteration(cx, (frame.result == UniqueTag.DOUBLE_MARK) ? Double.valueOf(frame.resultDbl) : frame.result);
+		}
+
+		generatorState.returnedException = new JavaScriptException(cx, value, frame.idata.itsSourceFile, sourceLine);
+		return stackTop;
+	}
+
+	private static int doRefSet(Context cx, CallFrame frame, Object[] stack, double[] sDbl, int stackTop) {
+		Object value = stack[stackTop];
+		if (value == UniqueTag.DOUBLE_MARK) {
+			value = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+		}
+		--stackTop;
+		Ref ref = (Ref) stack[stackTop];
+		stack[stackTop] = ScriptRuntime.refSet(cx, frame.scope, ref, value);
+		return stackTop;
+	}
+
+	private static void doSetUpvar(Context cx, CallFrame frame, byte[] iCode, Object[] stack, double[] sDbl, int stackTop, String stringReg) {
+		Object rhs = stack[stackTop];
+		if (rhs == UniqueTag.DOUBLE_MARK) {
+			rhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+		}
+		ScriptableObject.Slot slot = getUpvarSlot(frame.scope, 0xFF & iCode[frame.pc], getIndex(iCode, frame.pc + 1), stringReg);
+		if (slot != null && (slot.getAttributes() & ScriptableObject.READONLY) == 0) {
+			slot.value = rhs;
+		} else {
+			Scriptable lhs = ScriptRuntime.bind(cx, frame.scope, stringReg);
+			rhs = frame.idata.isStrict ? ScriptRuntime.strictSetName(cx, frame.scope, lhs, rhs, stringReg) : ScriptRuntime.setName(cx, frame.scope, lhs, rhs, stringReg);
+		}
+		stack[stackTop] = rhs;
+	}
+
+	private static int doCatchScope(Context cx, CallFrame frame, Object[] stack, int stackTop, int indexReg, String stringReg) {
+		// stack top: exception object
+		// stringReg: name of exception variable
+		// indexReg: local for exception scope
+		--stackTop;
+		indexReg += frame.localShift;
+
+		boolean afterFirstScope = (frame.idata.itsICode[frame.pc] != 0);
+		Throwable caughtException = (Throwable) stack[stackTop + 1];
+		Scriptable lastCatchScope;
+		if (!afterFirstScope) {
+			lastCatchScope = null;
+		} else {
+			lastCatchScope = (Scriptable) stack[indexReg];
+		}
+		stack[indexReg] = ScriptRuntime.newCatchScope(cx, frame.scope, caughtException, lastCatchScope, stringReg);
+		return stackTop;
+	}
+
+	private static int doEnumInit(Context cx, CallFrame frame, int op, Object[] stack, double[] sDbl, int stackTop, int indexReg) {
+		Object lhs = stack[stackTop];
+		if (lhs == UniqueTag.DOUBLE_MARK) {
+			lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+		}
+		--stackTop;
+		indexReg += frame.localShift;
+		int enumType = op == Token.ENUM_INIT_KEYS ? ScriptRuntime.ENUMERATE_KEYS : op == Token.ENUM_INIT_VALUES ? ScriptRuntime.ENUMERATE_VALUES : op == Token.ENUM_INIT_VALUES_IN_ORDER ? ScriptRuntime.ENUMERATE_VALUES_IN_ORDER : ScriptRuntime.ENUMERATE_ARRAY;
+		stack[indexReg] = ScriptRuntime.enumInit(cx, frame.scope, lhs, enumType);
+		return stackTop;
+	}
+
+	private static Object createClosure(Context cx, CallFrame frame, int indexReg) {
+		InterpretedFunction fn = InterpretedFunction.createFunction(cx, frame.scope, frame.fnOrScript, indexReg);
+		if (fn.idata.itsFunctionType == FunctionNode.ARROW_FUNCTION) {
+			return new ArrowFunction(cx, frame.scope, fn, frame.thisObj);
+		}
+		return fn;
+	}
+
+	private static int doLiteralAccessor(int op, Object[] stack, double[] sDbl, int stackTop) {
+		Object value = stack[stackTop];
+		--stackTop;
+		int i = (int) sDbl[stackTop];
+		((Object[]) stack[stackTop])[i] = value;
+		((int[]) stack[stackTop - 1])[i] = op == Icode_LITERAL_GETTER ? -1 : +1;
+		sDbl[stackTop] = i + 1;
+		return stackTop;
+	}
+
+	private static int doLiteral(Context cx, CallFrame frame, int op, Object[] stack, int stackTop, int indexReg) {
+		Object[] data = (Object[]) stack[stackTop];
+		--stackTop;
+		int[] getterSetters = (int[]) stack[stackTop];
+		Object val;
+		if (op == Token.OBJECTLIT) {
+			Object[] ids = (Object[]) frame.idata.literalIds[indexReg];
+			val = ScriptRuntime.newObjectLiteral(cx, frame.scope, ids, data, getterSetters);
+		} else {
+			int[] skipIndexces = null;
+			if (op == Icode_SPARE_ARRAYLIT) {
+				skipIndexces = (int[]) frame.idata.literalIds[indexReg];
+			}
+			val = ScriptRuntime.newArrayLiteral(cx, frame.scope, data, skipIndexces);
+		}
+		stack[stackTop] = val;
+		return stackTop;
+	}
+
+	private static int doEnterDotQuery(Context cx, CallFrame frame, Object[] stack, double[] sDbl, int stackTop) {
+		Object lhs = stack[stackTop];
+		if (lhs == UniqueTag.DOUBLE_MARK) {
+			lhs = ScriptRuntime.wrapNumber(sDbl[stackTop]);
+		}
+		--stackTop;
+		frame.scope = ScriptRuntime.enterDotQuery(lhs, frame.scope, cx);
+		return stackTop;
+	}
+
 	private static int doSetConstVar(CallFrame frame, Object[] stack, double[] sDbl, int stackTop, Object[] vars, double[] varDbls, int[] varAttributes, int indexReg, Context cx) {
 		if (!frame.useActivation) {
 			if ((varAttributes[indexReg] & ScriptableObject.READONLY) == 0) {
@@ -1701,6 +2059,72 @@ public final class Interpreter extends Icode implements Evaluator {
 		return stackTop;
 	}
 
+	/**
+	 * Finds the activation slot of a variable resolved at compile time to
+	 * {@code depth} activations up the scope chain, or null if the scope chain
+	 * does not have the expected shape and the name has to be looked up.
+	 */
+	private static ScriptableObject.Slot getUpvarSlot(Scriptable scope, int depth, int index, String name) {
+		for (; depth > 0 && scope != null; --depth) {
+			scope = scope.getParentScope();
+		}
+		if (scope instanceof NativeCall call) {
+			return call.getVarSlot(index, name);
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a global name through the property cell of its instruction. The
+	 * cell is bound to the own slot of the first scope object that the
+	 * compiler could not see, {@code depth} activations up the scope chain,
+	 * and is rebound whenever that object changes or the slot is removed.
+	 * If asFunctionCall is true, also stores the this object for the call
+	 * like {@link ScriptRuntime#getNameFunctionAndThis}.
+	 */
+	private static Object getGlobal(Context cx, CallFrame frame, int depth, int cellIndex, String name, boolean asFunctionCall) {
+		Scriptable scope = frame.scope;
+		for (; depth > 0 && scope != null; --depth) {
+			scope = scope.getParentScope();
+		}
+
+		InterpreterData.GlobalCell cell = frame.idata.itsGlobalCells[cellIndex];
+		if (cell != null && cell.owner == scope && !cell.slot.removed) {
+			Object value = cell.slot.value;
+			if (!asFunctionCall) {
+				return value;
+			} else if (value instanceof Callable) {
+				cx.storeScriptable(scope);
+				return value;
+			}
+		}
+
+		Object value = asFunctionCall ? ScriptRuntime.getNameFunctionAndThis(cx, frame.scope, name) : ScriptRuntime.name(cx, frame.scope, name);
+		if (scope instanceof ScriptableObject owner && HAS_SLOT_GET.get(owner.getClass())) {
+			ScriptableObject.Slot slot = owner.querySlot(name);
+			if (slot != null && !(slot instanceof ScriptableObject.GetterSlot) && slot.value == value) {
+				frame.idata.itsGlobalCells[cellIndex] = new InterpreterData.GlobalCell(owner, slot);
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * Whether get(String) of a scope class returns own data slots as they are,
+	 * which is what allows reading them through a {@link InterpreterData.GlobalCell}.
+	 */
+	private static final ClassValue<Boolean> HAS_SLOT_GET = new ClassValue<>() {
+		@Override
+		protected Boolean computeValue(Class<?> type) {
+			try {
+				Class<?> declaringClass = type.getMethod("get", Context.class, String.class, Scriptable.class).getDeclaringClass();
+				return declaringClass == ScriptableObject.class || declaringClass == IdScriptableObject.class;
+			} catch (NoSuchMethodException ex) {
+				return false;
+			}
+		}
+	};
+
 	private static int doGetVar(CallFrame frame, Object[] stack, double[] sDbl, int stackTop, Object[] vars, double[] varDbls, int indexReg, Context cx) {
 		++stackTop;
 		if (!frame.useActivation) {
@@ -1945,6 +2369,9 @@ public final class Interpreter extends Icode implements Evaluator {
 		CallFrame frame = new CallFrame(cx, thisObj, fnOrScript, parentFrame);
 		frame.initializeArgs(cx, callerScope, args, argsDbl, argShift, argCount);
 		enterFrame(cx, frame, args, false);
+		if (cx.profiler != null) {
+			cx.profiler.countCall(frame.idata);
+		}
 		return frame;
 	}
 
@@ -2073,12 +2500,12 @@ public final class Interpreter extends Icode implements Evaluator {
 				// to reduce method calls
 			} else if (lhs instanceof CharSequence) {
 				if (rhs instanceof CharSequence) {
-					stack[stackTop] = ConsString.flatten((CharSequence) lhs, (CharSequence) rhs);
+					stack[stackTop] = ConsString.flatten(cx, (CharSequence) lhs, (CharSequence) rhs);
 				} else {
-					stack[stackTop] = ConsString.flatten((CharSequence) lhs, ScriptRuntime.toCharSequence(cx, rhs));
+					stack[stackTop] = ConsString.flatten(cx, (CharSequence) lhs, ScriptRuntime.toCharSequence(cx, rhs));
 				}
 			} else if (rhs instanceof CharSequence) {
-				stack[stackTop] = ConsString.flatten(ScriptRuntime.toCharSequence(cx, lhs), (CharSequence) rhs);
+				stack[stackTop] = ConsString.flatten(cx, ScriptRuntime.toCharSequence(cx, lhs), (CharSequence) rhs);
 
 			} else {
 				double lDbl = (lhs instanceof Number) ? ((Number) lhs).doubleValue() : ScriptRuntime.toNumber(cx, lhs);
@@ -2101,9 +2528,9 @@ public final class Interpreter extends Icode implements Evaluator {
 		} else if (lhs instanceof CharSequence) {
 			CharSequence rstr = ScriptRuntime.numberToString(cx, d, 10);
 			if (leftRightOrder) {
-				stack[stackTop] = ConsString.flatten((CharSequence) lhs, rstr);
+				stack[stackTop] = ConsString.flatten(cx, (CharSequence) lhs, rstr);
 			} else {
-				stack[stackTop] = ConsString.flatten(rstr, (CharSequence) lhs);
+				stack[stackTop] = ConsString.flatten(cx, rstr, (CharSequence) lhs);
 			}
 		} else {
 			double lDbl = (lhs instanceof Number) ? ((Number) lhs).doubleValue() : ScriptRuntime.toNumber(cx, lhs);
@@ -2144,7 +2571,19 @@ public final class Interpreter extends Icode implements Evaluator {
 	}
 
 	private static void addInstructionCount(Context cx, CallFrame frame, int extra) {
-		cx.instructionCount += frame.pc - frame.pcPrevBranch + extra;
+		int count = frame.pc - frame.pcPrevBranch + extra;
+		if (cx.task != null) {
+			cx.task.instructions += count;
+		}
+		if (cx.quota != null) {
+			cx.quota.addInstructions(count);
+		}
+		if (cx.instructionThreshold == 0) {
+			// Only counting for the task or quota, drop the invocation costs added for the observer
+			cx.instructionCount = 0;
+			return;
+		}
+		cx.instructionCount += count;
 		if (cx.instructionCount > cx.instructionThreshold) {
 			cx.observeInstructionCount(cx.instructionCount);
 			cx.instructionCount = 0;
@@ -2234,6 +2673,146 @@ public final class Interpreter extends Icode implements Evaluator {
 		ex.interpreterLineData = linePC;
 	}
 
+	/**
+	 * Copies the function and current line of every interpreter frame of cx into
+	 * functions and lines, innermost first, and returns the number of frames copied.
+	 * This is called by {@link ScriptProfiler} from another thread without any
+	 * synchronization, so the result is only a best-effort snapshot and frames
+	 * changing during the walk simply end it early.
+	 */
+	static int sampleStack(Context cx, InterpreterData[] functions, int[] lines) {
+		int count = 0;
+
+		try {
+			CallFrame top = (CallFrame) cx.lastInterpreterFrame;
+			ObjArray previous = cx.previousInterpreterInvocations;
+			int previousIndex = previous == null ? 0 : previous.size();
+			CallFrame frame = top;
+
+			while (frame != null && count < functions.length) {
+				InterpreterData idata = frame.idata;
+				int pc = frame.pcSourceLineStart;
+				functions[count] = idata;
+				lines[count] = pc >= 0 ? getIndex(idata.itsICode, pc) : -1;
+				count++;
+				frame = frame.parentFrame;
+
+				while (frame == null && previousIndex > 0) {
+					frame = (CallFrame) previous.get(--previousIndex);
+					if (frame == top) {
+						// Pushed to previous invocations, see captureStackInfo
+						frame = null;
+					}
+				}
+			}
+		} catch (RuntimeException ex) {
+			// The running thread changed the stack under us, keep what was read
+		}
+
+		return count;
+	}
+
+	/**
+	 * Recognizes functions whose whole body is <code>return a - b</code> or
+	 * <code>return a.p - b.p</code> for parameters a and b, in either order, so that
+	 * sorting can compute the operands once per element instead of calling the function.
+	 */
+	static ArrayLikeAbstractOperations.NumericSortKey getNumericSortKey(InterpreterData idata) {
+		if (idata.itsNeedsActivation || idata.isES6Generator || idata.argCount < 2) {
+			return null;
+		}
+
+		byte[] iCode = idata.itsICode;
+		// pc, then the parameter index and property string index of the last operand
+		int[] state = new int[3];
+
+		if (iCode.length > 3 && iCode[0] == Icode_LINE) {
+			state[0] = 3;
+		}
+
+		if (!matchSortOperand(idata, state)) {
+			return null;
+		}
+
+		int first = state[1];
+		int firstProperty = state[2];
+
+		if (!matchSortOperand(idata, state) || first == state[1] || firstProperty != state[2]) {
+			return null;
+		}
+
+		int pc = state[0];
+
+		if (pc + 1 >= iCode.length || iCode[pc] != Token.SUB || iCode[pc + 1] != Token.RETURN) {
+			return null;
+		}
+
+		return new ArrayLikeAbstractOperations.NumericSortKey(firstProperty < 0 ? null : idata.itsStringTable[firstProperty], first == 1);
+	}
+
+	/**
+	 * Matches Icode_GETVAR1 of parameter 0 or 1, optionally followed by a string prefix and GETPROP
+	 * or by Icode_GETPROP_STR.
+	 */
+	private static boolean matchSortOperand(InterpreterData idata, int[] state) {
+		byte[] iCode = idata.itsICode;
+		int pc = state[0];
+
+		if (pc + 1 >= iCode.length || iCode[pc] != Icode_GETVAR1) {
+			return false;
+		}
+
+		int var = 0xFF & iCode[pc + 1];
+
+		if (var > 1) {
+			return false;
+		}
+
+		pc += 2;
+		int property = -1;
+		int op = pc < iCode.length ? iCode[pc] : 0;
+
+		switch (op) {
+			case Icode_REG_STR_C0, Icode_REG_STR_C1, Icode_REG_STR_C2, Icode_REG_STR_C3 -> {
+				property = Icode_REG_STR_C0 - op;
+				pc += 1;
+			}
+			case Icode_REG_STR1 -> {
+				property = 0xFF & iCode[pc + 1];
+				pc += 2;
+			}
+			case Icode_REG_STR2 -> {
+				property = getIndex(iCode, pc + 1);
+				pc += 3;
+			}
+			case Icode_REG_STR4 -> {
+				property = getInt(iCode, pc + 1);
+				pc += 5;
+			}
+			case Icode_GETPROP_STR -> {
+				property = getIndex(iCode, pc + 1);
+				// GETPROP is part of the instruction
+				state[0] = pc + 3;
+				state[1] = var;
+				state[2] = property;
+				return true;
+			}
+		}
+
+		if (property >= 0) {
+			if (pc >= iCode.length || iCode[pc] != Token.GETPROP) {
+				return false;
+			}
+
+			pc++;
+		}
+
+		state[0] = pc;
+		state[1] = var;
+		state[2] = property;
+		return true;
+	}
+
 	@Override
 	public String getSourcePositionFromStack(Context cx, int[] linep) {
 		CallFrame frame = (CallFrame) cx.lastInterpreterFrame;
@@ -48,6 +48,10 @@ final class InterpreterData {
 	 * true if the function has been declared like "!function() {}".
 	 */
 	boolean declaredAsFunctionExpression;
+	/**
+	 * Property cells bound by Icode_GETGLOBAL and Icode_GLOBAL_AND_THIS, one per instruction.
+	 */
+	GlobalCell[] itsGlobalCells;
 	private int icodeHashCode = 0;
 
 	InterpreterData(String sourceFile, boolean isStrict) {
@@ -99,4 +103,19 @@ final class InterpreterData {
 		}
 		return h;
 	}
+
+	/**
+	 * Slot of a global name in the scope object it was found in. Valid for
+	 * as long as the instruction runs against the same scope object and the
+	 * slot has not been removed or replaced by an accessor.
+	 */
+	static final class GlobalCell {
+		final ScriptableObject owner;
+		final ScriptableObject.Slot slot;
+
+		GlobalCell(ScriptableObject owner, ScriptableObject.Slot slot) {
+			this.owner = owner;
+			this.slot = slot;
+		}
+	}
 }
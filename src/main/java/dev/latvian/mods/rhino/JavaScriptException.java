@@ -28,10 +28,13 @@ public class JavaScriptException extends RhinoException {
 	 * @param value the JavaScript value thrown.
 	 */
 	public JavaScriptException(Context cx, Object value, String sourceName, int lineNumber) {
-		super(cx);
+		super(cx, null, getJavaCause(cx, value));
 		this.localContext = cx;
 		recordErrorOrigin(sourceName, lineNumber, null, 0);
 		this.value = value;
+	}
+
+	private static Throwable getJavaCause(Context cx, Object value) {
 		// try to extract the cause. Value can be either a (wrapped) java.lang.Throwable
 		// or a NativeError, that may contain the causing javaException
 		Object javaCause = value;
@@ -41,9 +44,7 @@ public class JavaScriptException extends RhinoException {
 		if (javaCause instanceof Wrapper wrapper) {
 			javaCause = wrapper.unwrap();
 		}
-		if (javaCause instanceof Throwable throwable && throwable != this) {
-			this.initCause(throwable);
-		}
+		return javaCause instanceof Throwable throwable ? throwable : null;
 	}
 
 	@Override
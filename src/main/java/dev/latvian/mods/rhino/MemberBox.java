@@ -6,11 +6,15 @@
 
 package dev.latvian.mods.rhino;
 
+import dev.latvian.mods.rhino.type.TypeConsolidator;
 import dev.latvian.mods.rhino.type.TypeInfo;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Wrapper class for Method and Constructor instances to cache
@@ -57,9 +61,16 @@ public final class MemberBox {
 		return null;
 	}
 
+	/**
+	 * Parameter and return types of a member after consolidating them with the type arguments of a receiver.
+	 */
+	record ConsolidatedTypes(List<TypeInfo> parameters, TypeInfo returnType) {
+	}
+
 	transient CachedExecutableInfo executableInfo;
 	transient Object delegateTo;
 	public transient WrappedExecutable wrappedExecutable;
+	private transient volatile Map<TypeInfo, ConsolidatedTypes> consolidatedTypes;
 
 	MemberBox(CachedExecutableInfo executableInfo) {
 		this.executableInfo = executableInfo;
@@ -104,6 +115,34 @@ public final class MemberBox {
 		return wrappedExecutable != null ? wrappedExecutable.getReturnType() : executableInfo.getReturnType();
 	}
 
+	/**
+	 * Consolidated types are cached by the type of the receiver, as parameterized types are interned and the mapping
+	 * only depends on them, so calls on generic objects don't have to consolidate the signature every time.
+	 */
+	ConsolidatedTypes getConsolidatedTypes(NativeJavaObject receiver) {
+		var cache = consolidatedTypes;
+
+		if (cache == null) {
+			synchronized (this) {
+				cache = consolidatedTypes;
+
+				if (cache == null) {
+					consolidatedTypes = cache = new ConcurrentHashMap<>();
+				}
+			}
+		}
+
+		var types = cache.get(receiver.typeInfo);
+
+		if (types == null) {
+			var mapping = receiver.getTypeMapping();
+			types = new ConsolidatedTypes(TypeConsolidator.consolidateAll(parameters().typeInfos(), mapping), getReturnType().consolidate(mapping));
+			cache.putIfAbsent(receiver.typeInfo, types);
+		}
+
+		return types;
+	}
+
 	String toJavaDeclaration() {
 		return String.valueOf(getReturnType()) + ' ' + getName() + JavaMembers.liveConnectSignature(parameters().types());
 	}
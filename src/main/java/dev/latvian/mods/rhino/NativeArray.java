@@ -9,6 +9,7 @@ package dev.latvian.mods.rhino;
 import dev.latvian.mods.rhino.ArrayLikeAbstractOperations.IterativeOperation;
 import dev.latvian.mods.rhino.ArrayLikeAbstractOperations.ReduceOperation;
 import dev.latvian.mods.rhino.regexp.NativeRegExp;
+import dev.latvian.mods.rhino.type.TypeInfo;
 import dev.latvian.mods.rhino.util.DataObject;
 
 import java.util.ArrayList;
@@ -529,7 +530,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 			working[i] = ArrayLikeAbstractOperations.getRawElem(o, i, cx);
 		}
 
-		Sorting.get().hybridSort(working, comparator);
+		Sorting.get().sortArray(working, comparator);
 
 		// copy the working array back into thisObj
 		for (int i = 0; i < length; ++i) {
@@ -543,7 +544,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 		Scriptable o = ScriptRuntime.toObject(cx, scope, thisObj);
 
 		if (o instanceof NativeArray na) {
-			if (na.denseOnly && na.ensureCapacity((int) na.length + args.length)) {
+			if (na.denseOnly && na.ensureCapacity(cx, (int) na.length + args.length)) {
 				for (Object arg : args) {
 					na.dense[(int) na.length++] = arg;
 				}
@@ -637,7 +638,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 		Scriptable o = ScriptRuntime.toObject(cx, scope, thisObj);
 
 		if (o instanceof NativeArray na) {
-			if (na.denseOnly && na.ensureCapacity((int) na.length + args.length)) {
+			if (na.denseOnly && na.ensureCapacity(cx, (int) na.length + args.length)) {
 				System.arraycopy(na.dense, 0, na.dense, args.length, (int) na.length);
 				System.arraycopy(args, 0, na.dense, 0, args.length);
 				na.length += args.length;
@@ -732,7 +733,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 
 		/* Find the direction (up or down) to copy and make way for argv. */
 		long delta = argc - count;
-		if (denseMode && length + delta < Integer.MAX_VALUE && na.ensureCapacity((int) (length + delta))) {
+		if (denseMode && length + delta < Integer.MAX_VALUE && na.ensureCapacity(cx, (int) (length + delta))) {
 			System.arraycopy(na.dense, (int) end, na.dense, (int) (begin + argc), (int) (length - end));
 			if (argc > 0) {
 				System.arraycopy(args, 2, na.dense, (int) begin, argc);
@@ -799,7 +800,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 			if (denseResult.denseOnly && (arg instanceof final NativeArray denseArg)) {
 				if (denseArg.denseOnly) {
 					// Now we can optimize
-					denseResult.ensureCapacity((int) newlen);
+					denseResult.ensureCapacity(cx, (int) newlen);
 					System.arraycopy(denseArg.dense, 0, denseResult.dense, (int) offset, (int) srclen);
 					return newlen;
 				}
@@ -1398,14 +1399,18 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 			if (intLength < DEFAULT_INITIAL_CAPACITY) {
 				intLength = DEFAULT_INITIAL_CAPACITY;
 			}
+			addToQuota(cx, intLength);
 			dense = new Object[intLength];
 			Arrays.fill(dense, NOT_FOUND);
+		} else {
+			addToQuota(cx, 0);
 		}
 		length = lengthArg;
 	}
 
 	public NativeArray(Context cx, Object[] array) {
 		localContext = cx;
+		addToQuota(cx, array.length);
 		denseOnly = true;
 		dense = array;
 		length = array.length;
@@ -1876,6 +1881,31 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 		return super.get(cx, index, start);
 	}
 
+	/**
+	 * Returns the element at index if it is stored in the dense array, otherwise
+	 * {@link Scriptable#NOT_FOUND} and the caller has to do a regular lookup.
+	 * Lets the interpreter read elements without a property lookup.
+	 */
+	final Object getDenseElement(int index) {
+		// Subclasses may override get and put
+		if (denseOnly && dense != null && 0 <= index && index < dense.length && getClass() == NativeArray.class) {
+			return dense[index];
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Replaces an existing element stored in the dense array, returns false if the
+	 * caller has to do a regular put instead.
+	 */
+	final boolean setDenseElement(Context cx, int index, Object value) {
+		if (denseOnly && dense != null && 0 <= index && index < dense.length && dense[index] != NOT_FOUND && !isSealed(cx) && getClass() == NativeArray.class) {
+			dense[index] = value;
+			return true;
+		}
+		return false;
+	}
+
 	@Override
 	public boolean has(Context cx, int index, Scriptable start) {
 		if (!denseOnly && isGetterOrSetter(null, index, false)) {
@@ -1900,13 +1930,23 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 		}
 	}
 
-	private boolean ensureCapacity(int capacity) {
+	private static void addToQuota(Context cx, int elements) {
+		if (cx != null && cx.quota != null) {
+			cx.quota.add(ResourceQuota.Resource.OBJECTS, 1L);
+			cx.quota.add(ResourceQuota.Resource.ARRAY_ELEMENTS, elements);
+		}
+	}
+
+	private boolean ensureCapacity(Context cx, int capacity) {
 		if (capacity > dense.length) {
 			if (capacity > MAX_PRE_GROW_SIZE) {
 				denseOnly = false;
 				return false;
 			}
 			capacity = Math.max(capacity, (int) (dense.length * GROW_FACTOR));
+			if (cx.quota != null) {
+				cx.quota.add(ResourceQuota.Resource.ARRAY_ELEMENTS, capacity - dense.length);
+			}
 			Object[] newDense = new Object[capacity];
 			System.arraycopy(dense, 0, newDense, 0, dense.length);
 			Arrays.fill(newDense, dense.length, newDense.length, NOT_FOUND);
@@ -1926,7 +1966,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 					this.length = (long) index + 1;
 				}
 				return;
-			} else if (denseOnly && index < dense.length * GROW_FACTOR && ensureCapacity(index + 1)) {
+			} else if (denseOnly && index < dense.length * GROW_FACTOR && ensureCapacity(cx, index + 1)) {
 				dense[index] = value;
 				this.length = (long) index + 1;
 				return;
@@ -2063,6 +2103,134 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 		return length;
 	}
 
+	/**
+	 * Converts all elements to a new Java array of componentType, same as converting each one with
+	 * {@link Context#jsToJava(Object, TypeInfo)}.
+	 * <p>
+	 * Dense arrays converted to int[], long[], float[], double[], String[] or an unconverted Object[] are
+	 * copied with a typed loop that only falls back to jsToJava for elements that aren't already numbers
+	 * or strings, instead of converting, boxing and storing every element reflectively. Component types with a
+	 * registered type wrapper always take the slow path.
+	 */
+	public Object toJavaArray(Context cx, TypeInfo componentType) {
+		int len = (int) length;
+		var type = componentType.asClass();
+
+		// A type wrapper for the component type may change any element, so only jsToJava knows what to do
+		if (!denseOnly || len == 0 || (type.isPrimitive() || type == String.class) && cx.factory.getTypeWrappers().hasWrapper(type)) {
+			return toJavaArraySlow(cx, len, componentType);
+		} else if (type == int.class) {
+			var result = new int[len];
+
+			for (int i = 0; i < len; i++) {
+				var e = i < dense.length ? dense[i] : NOT_FOUND;
+
+				if (e instanceof Integer n) {
+					result[i] = n;
+				} else if (e instanceof Double d && d == (int) (double) d) {
+					result[i] = (int) (double) d;
+				} else {
+					result[i] = (Integer) toJavaElement(cx, i, componentType);
+				}
+			}
+
+			return result;
+		} else if (type == long.class) {
+			var result = new long[len];
+
+			for (int i = 0; i < len; i++) {
+				var e = i < dense.length ? dense[i] : NOT_FOUND;
+
+				if (e instanceof Integer n) {
+					result[i] = n;
+				} else if (e instanceof Double d && d == (long) (double) d && d != 0x1p63) {
+					result[i] = (long) (double) d;
+				} else {
+					result[i] = (Long) toJavaElement(cx, i, componentType);
+				}
+			}
+
+			return result;
+		} else if (type == float.class) {
+			var result = new float[len];
+
+			for (int i = 0; i < len; i++) {
+				var e = i < dense.length ? dense[i] : NOT_FOUND;
+
+				// Tiny doubles are flushed to zero by the conversion instead of rounded
+				if (e instanceof Integer n) {
+					result[i] = n;
+				} else if (e instanceof Double d && (d == 0D || Math.abs(d) >= Float.MIN_VALUE)) {
+					result[i] = (float) (double) d;
+				} else {
+					result[i] = (Float) toJavaElement(cx, i, componentType);
+				}
+			}
+
+			return result;
+		} else if (type == double.class) {
+			var result = new double[len];
+
+			for (int i = 0; i < len; i++) {
+				var e = i < dense.length ? dense[i] : NOT_FOUND;
+
+				if (e instanceof Double d) {
+					result[i] = d;
+				} else if (e instanceof Integer n) {
+					result[i] = n;
+				} else {
+					result[i] = (Double) toJavaElement(cx, i, componentType);
+				}
+			}
+
+			return result;
+		} else if (type == String.class) {
+			var result = new String[len];
+
+			for (int i = 0; i < len; i++) {
+				var e = i < dense.length ? dense[i] : NOT_FOUND;
+				result[i] = e instanceof String s ? s : (String) toJavaElement(cx, i, componentType);
+			}
+
+			return result;
+		} else if (type == Object.class && !componentType.shouldConvert()) {
+			var result = new Object[len];
+			System.arraycopy(dense, 0, result, 0, Math.min(len, dense.length));
+
+			for (int i = 0; i < len; i++) {
+				var e = result[i];
+
+				if (e == NOT_FOUND || e instanceof Wrapper) {
+					result[i] = toJavaElement(cx, i, componentType);
+				}
+			}
+
+			return result;
+		}
+
+		return toJavaArraySlow(cx, len, componentType);
+	}
+
+	private Object toJavaArraySlow(Context cx, int len, TypeInfo componentType) {
+		var result = componentType.newArray(len);
+
+		for (int i = 0; i < len; i++) {
+			java.lang.reflect.Array.set(result, i, toJavaElement(cx, i, componentType));
+		}
+
+		return result;
+	}
+
+	private Object toJavaElement(Context cx, int index, TypeInfo componentType) {
+		var value = get(cx, index, this);
+
+		try {
+			return cx.jsToJava(value == NOT_FOUND ? Undefined.INSTANCE : value, componentType);
+		} catch (EvaluatorException ee) {
+			return cx.reportConversionError(this, componentType);
+		}
+	}
+
 	private void setLength(Context cx, Object val) {
 		/* XXX do we satisfy this?
 		 * 15.4.5.1 [[Put]](P, V):
@@ -2087,7 +2255,7 @@ public class NativeArray extends IdScriptableObject implements List, DataObject
 				Arrays.fill(dense, (int) longVal, dense.length, NOT_FOUND);
 				length = longVal;
 				return;
-			} else if (longVal < MAX_PRE_GROW_SIZE && longVal < (length * GROW_FACTOR) && ensureCapacity((int) longVal)) {
+			} else if (longVal < MAX_PRE_GROW_SIZE && longVal < (length * GROW_FACTOR) && ensureCapacity(cx, (int) longVal)) {
 				length = longVal;
 				return;
 			} else {
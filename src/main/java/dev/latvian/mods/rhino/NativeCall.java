@@ -18,6 +18,8 @@ public final class NativeCall extends IdScriptableObject {
 	private static final Object CALL_TAG = "Call";
 	private static final int Id_constructor = 1;
 	private static final int MAX_PROTOTYPE_ID = 1;
+	private static final int Id_arguments = 1;
+	private static final int MAX_INSTANCE_ID = 1;
 
 	static void init(Scriptable scope, boolean sealed, Context cx) {
 		NativeCall obj = new NativeCall();
@@ -29,6 +31,10 @@ public final class NativeCall extends IdScriptableObject {
 	boolean isStrict;
 	transient NativeCall parentActivationCall;
 	private Arguments arguments;
+	// "arguments" is created on first access, see getInstanceIdValue
+	private boolean hasArguments;
+	private Object argumentsObj;
+	private transient Slot[] varSlots;
 
 	NativeCall() {
 	}
@@ -53,11 +59,10 @@ public final class NativeCall extends IdScriptableObject {
 			}
 		}
 
-		// initialize "arguments" property but only if it was not overridden by
+		// expose "arguments" property but only if it was not overridden by
 		// the parameter with the same name
 		if (!super.has(cx, "arguments", this) && !isArrow) {
-			arguments = new Arguments(this, cx);
-			defineProperty(cx, "arguments", arguments, PERMANENT);
+			hasArguments = true;
 		}
 
 		if (paramAndVarCount != 0) {
@@ -79,6 +84,57 @@ public final class NativeCall extends IdScriptableObject {
 		return "Call";
 	}
 
+	@Override
+	protected int getMaxInstanceId() {
+		return MAX_INSTANCE_ID;
+	}
+
+	@Override
+	protected int findInstanceIdInfo(String s, Context cx) {
+		if (hasArguments && s.equals("arguments")) {
+			return instanceIdInfo(PERMANENT, Id_arguments);
+		}
+		return super.findInstanceIdInfo(s, cx);
+	}
+
+	@Override
+	protected String getInstanceIdName(int id) {
+		if (id == Id_arguments) {
+			return "arguments";
+		}
+		return super.getInstanceIdName(id);
+	}
+
+	@Override
+	protected Object getInstanceIdValue(int id, Context cx) {
+		if (id == Id_arguments) {
+			Object value = argumentsObj;
+			if (value == null) {
+				// Most activations never touch "arguments", so only
+				// allocate it once it is actually looked up. The attributes depend
+				// on the function that owns it, not on the code doing the lookup
+				arguments = new Arguments(this, cx);
+				if (isStrict || cx.isTopLevelStrict) {
+					arguments.defineStrictAttributes(cx);
+				}
+				value = argumentsObj = arguments;
+			} else if (value == UniqueTag.NULL_VALUE) {
+				value = null;
+			}
+			return value;
+		}
+		return super.getInstanceIdValue(id, cx);
+	}
+
+	@Override
+	protected void setInstanceIdValue(int id, Object value, Context cx) {
+		if (id == Id_arguments) {
+			argumentsObj = value != null ? value : UniqueTag.NULL_VALUE;
+			return;
+		}
+		super.setInstanceIdValue(id, value, cx);
+	}
+
 	@Override
 	protected int findPrototypeId(String s) {
 		return s.equals("constructor") ? Id_constructor : 0;
@@ -115,6 +171,36 @@ public final class NativeCall extends IdScriptableObject {
 		throw new IllegalArgumentException(String.valueOf(id));
 	}
 
+	/**
+	 * Returns the slot of the parameter or variable at the given index of
+	 * {@link #function}, or null if the index does not name that variable or
+	 * it is not a plain data property, in which case the caller has to fall
+	 * back to a lookup by name. Variables are permanent, so a slot stays
+	 * valid for the lifetime of this activation once it exists.
+	 */
+	Slot getVarSlot(int index, String name) {
+		Slot[] slots = varSlots;
+		if (slots == null) {
+			slots = varSlots = new Slot[function.getParamAndVarCount()];
+		}
+		if (index >= slots.length) {
+			return null;
+		}
+		String varName = function.getParamOrVarName(index);
+		if (varName != name && !varName.equals(name)) {
+			return null;
+		}
+		Slot slot = slots[index];
+		if (slot == null || slot.removed) {
+			slot = querySlot(name);
+			if (slot == null || slot instanceof GetterSlot) {
+				return null;
+			}
+			slots[index] = slot;
+		}
+		return slot;
+	}
+
 	public void defineAttributesForArguments(Context cx) {
 		if (arguments != null) {
 			arguments.defineAttributesForStrictMode(cx);
@@ -145,7 +145,7 @@ public class NativeJSON extends IdScriptableObject {
 			builder.append('{');
 			boolean first = true;
 
-			for (var id : obj.getIds(cx)) {
+			for (var id : obj.getSharedIds(cx)) {
 				// todo: maybe a sealed type since only ints, strings and symbols can be keys?
 				Object value = id instanceof Integer index ? obj.get(cx, index, obj) : obj.get(cx, String.valueOf(id), obj);
 				value = Wrapper.unwrapped(value);
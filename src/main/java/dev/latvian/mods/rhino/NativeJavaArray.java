@@ -21,15 +21,63 @@ import java.util.Objects;
  */
 
 public class NativeJavaArray extends NativeJavaObject implements SymbolScriptable {
+	// Element kinds that are read and written without going through reflection
+	private static final int OTHER = 0;
+	private static final int INT = 1;
+	private static final int DOUBLE = 2;
+	private static final int BYTE = 3;
+	private static final int SHORT = 4;
+	private static final int LONG = 5;
+	private static final int FLOAT = 6;
+	private static final int CHAR = 7;
+	private static final int BOOLEAN = 8;
+
+	private static int getKind(Context cx, Class<?> arrayType) {
+		var type = arrayType.getComponentType();
+
+		// Type wrappers may change how values are converted to the component type
+		if (!type.isPrimitive() || cx.factory.getTypeWrappers().hasWrapper(type)) {
+			return OTHER;
+		} else if (type == int.class) {
+			return INT;
+		} else if (type == double.class) {
+			return DOUBLE;
+		} else if (type == byte.class) {
+			return BYTE;
+		} else if (type == short.class) {
+			return SHORT;
+		} else if (type == long.class) {
+			return LONG;
+		} else if (type == float.class) {
+			return FLOAT;
+		} else if (type == char.class) {
+			return CHAR;
+		} else if (type == boolean.class) {
+			return BOOLEAN;
+		}
+
+		return OTHER;
+	}
+
 	Object array;
 	int length;
 	TypeInfo componentType;
+	private final int kind;
 
 	public NativeJavaArray(Scriptable scope, Object array, TypeInfo type, Context cx) {
 		super(scope, null, type, cx);
 		this.array = array;
 		this.length = Array.getLength(array);
 		this.componentType = type.componentType();
+		this.kind = getKind(cx, array.getClass());
+	}
+
+	/**
+	 * The array if it's a double[] whose elements the interpreter may read and write without boxing them,
+	 * or null if elements have to go through get and put.
+	 */
+	final double[] getDoubleArray() {
+		return kind == DOUBLE && getClass() == NativeJavaArray.class ? (double[]) array : null;
 	}
 
 	@Override
@@ -72,8 +120,18 @@ public class NativeJavaArray extends NativeJavaObject implements SymbolScriptabl
 	@Override
 	public Object get(Context cx, int index, Scriptable start) {
 		if (0 <= index && index < length) {
-			Object obj = Array.get(array, index);
-			return cx.wrap(this, obj, componentType);
+			// Primitives are never wrapped, except chars which scripts see as numbers
+			return switch (kind) {
+				case INT -> Integer.valueOf(((int[]) array)[index]);
+				case DOUBLE -> Double.valueOf(((double[]) array)[index]);
+				case BYTE -> Byte.valueOf(((byte[]) array)[index]);
+				case SHORT -> Short.valueOf(((short[]) array)[index]);
+				case LONG -> Long.valueOf(((long[]) array)[index]);
+				case FLOAT -> Float.valueOf(((float[]) array)[index]);
+				case CHAR -> Integer.valueOf(((char[]) array)[index]);
+				case BOOLEAN -> Boolean.valueOf(((boolean[]) array)[index]);
+				default -> cx.wrap(this, Array.get(array, index), componentType);
+			};
 		}
 		return Undefined.INSTANCE;
 	}
@@ -97,7 +155,18 @@ public class NativeJavaArray extends NativeJavaObject implements SymbolScriptabl
 	@Override
 	public void put(Context cx, int index, Scriptable start, Object value) {
 		if (0 <= index && index < length) {
-			Array.set(array, index, cx.jsToJava(value, componentType));
+			// Values that are already of the component type skip conversion, anything else converts like any other Java argument
+			switch (kind) {
+				case INT -> ((int[]) array)[index] = value instanceof Integer n ? n : (Integer) cx.jsToJava(value, componentType);
+				case DOUBLE -> ((double[]) array)[index] = value instanceof Double d ? d : value instanceof Integer n ? n : (Double) cx.jsToJava(value, componentType);
+				case BYTE -> ((byte[]) array)[index] = value instanceof Integer n && n == (byte) (int) n ? (byte) (int) n : (Byte) cx.jsToJava(value, componentType);
+				case SHORT -> ((short[]) array)[index] = value instanceof Integer n && n == (short) (int) n ? (short) (int) n : (Short) cx.jsToJava(value, componentType);
+				case LONG -> ((long[]) array)[index] = value instanceof Integer n ? n : (Long) cx.jsToJava(value, componentType);
+				case FLOAT -> ((float[]) array)[index] = (Float) cx.jsToJava(value, componentType);
+				case CHAR -> ((char[]) array)[index] = (Character) cx.jsToJava(value, componentType);
+				case BOOLEAN -> ((boolean[]) array)[index] = value instanceof Boolean b ? b : (Boolean) cx.jsToJava(value, componentType);
+				default -> Array.set(array, index, cx.jsToJava(value, componentType));
+			}
 		} else {
 			throw Context.reportRuntimeError2("msg.java.array.index.out.of.bounds", String.valueOf(index), String.valueOf(length - 1), cx);
 		}
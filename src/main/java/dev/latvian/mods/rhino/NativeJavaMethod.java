@@ -7,7 +7,6 @@
 package dev.latvian.mods.rhino;
 
 import dev.latvian.mods.rhino.type.ParameterizedTypeInfo;
-import dev.latvian.mods.rhino.type.TypeConsolidator;
 import dev.latvian.mods.rhino.type.TypeInfo;
 
 import java.lang.reflect.Array;
@@ -345,10 +344,14 @@ public class NativeJavaMethod extends BaseFunction {
 		var pars = meth.parameters();
 
 		var argTypes = pars.typeInfos();
+		var returnType = meth.getReturnType();
 
+		// Only parameterized receivers have a mapping that changes anything
 		if (thisObj instanceof NativeJavaObject nativeJavaObject
 			&& nativeJavaObject.typeInfo instanceof ParameterizedTypeInfo ignored) {
-			argTypes = TypeConsolidator.consolidateAll(argTypes, nativeJavaObject.getTypeMapping());
+			var consolidated = meth.getConsolidatedTypes(nativeJavaObject);
+			argTypes = consolidated.parameters();
+			returnType = consolidated.returnType();
 		}
 
 		if (pars.isVarArg()) {
@@ -428,11 +431,6 @@ public class NativeJavaMethod extends BaseFunction {
 		}
 
 		Object retval = meth.invoke(javaObject, args, cx, scope);
-		var returnType = meth.getReturnType();
-		if (thisObj instanceof NativeJavaObject nativeJavaObject) {
-			returnType = returnType.consolidate(nativeJavaObject.getTypeMapping());
-		}
-
 		Object wrapped = cx.wrap(scope, retval, returnType);
 
 		if (wrapped == null && returnType.isVoid()) {
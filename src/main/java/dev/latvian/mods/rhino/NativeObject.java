@@ -683,6 +683,16 @@ public class NativeObject extends IdScriptableObject implements Map, DataObject
 		}
 	}
 
+	@Override
+	Object[] getSharedIds(Context cx) {
+		// Plain objects have all their enumerable keys in slots, unlike Object.prototype
+		if (getClass() == NativeObject.class && !hasPrototypeMap() && canCacheIds(cx)) {
+			return getCachedIds(cx);
+		}
+
+		return super.getSharedIds(cx);
+	}
+
 	@Override
 	public boolean containsKey(Object key) {
 		if (key instanceof String) {
@@ -800,7 +810,7 @@ public class NativeObject extends IdScriptableObject implements Map, DataObject
 		@Override
 		public Iterator<Entry<Object, Object>> iterator() {
 			return new Iterator<>() {
-				final Object[] ids = getIds(factory.enter());
+				final Object[] ids = getSharedIds(factory.enter());
 				Object key = null;
 				int index = 0;
 
@@ -876,7 +886,7 @@ public class NativeObject extends IdScriptableObject implements Map, DataObject
 		@Override
 		public Iterator<Object> iterator() {
 			return new Iterator<>() {
-				final Object[] ids = getIds(factory.enter());
+				final Object[] ids = getSharedIds(factory.enter());
 				Object key;
 				int index = 0;
 
@@ -917,7 +927,7 @@ public class NativeObject extends IdScriptableObject implements Map, DataObject
 		@Override
 		public Iterator<Object> iterator() {
 			return new Iterator<>() {
-				final Object[] ids = getIds(factory.enter());
+				final Object[] ids = getSharedIds(factory.enter());
 				Object key;
 				int index = 0;
 
@@ -345,6 +345,10 @@ final class NativeString extends IdScriptableObject implements Wrapper {
 			throw ScriptRuntime.rangeError(cx, "Invalid size or count value");
 		}
 
+		if (cx.quota != null) {
+			cx.quota.add(ResourceQuota.Resource.STRING_CHARS, size);
+		}
+
 		StringBuilder retval = new StringBuilder((int) size);
 		retval.append(str);
 
@@ -382,6 +386,9 @@ final class NativeString extends IdScriptableObject implements Wrapper {
 
 		// cast is not really correct here
 		int fillLen = (int) (intMaxLength - pad.length());
+		if (cx.quota != null) {
+			cx.quota.add(ResourceQuota.Resource.STRING_CHARS, intMaxLength);
+		}
 		StringBuilder concat = new StringBuilder();
 		do {
 			concat.append(filler);
@@ -61,7 +61,9 @@ public class Node implements Iterable<Node> {
 	public static final int DESTRUCTURING_SHORTHAND = 26; // JS 1.8 destructuring shorthand
 	public static final int ARROW_FUNCTION_PROP = 27;
 	public static final int TEMPLATE_LITERAL_PROP = 28;
-	public static final int LAST_PROP = 28;
+	public static final int UPVAR_SCOPE_PROP = 29; // function (or script for globals) defining a name resolved by lexical address
+	public static final int UPVAR_DEPTH_PROP = 30; // activation objects to skip to reach its scope
+	public static final int LAST_PROP = 30;
 
 	// values of ISNUMBER_PROP to specify
 	// which of the children are Number types
@@ -54,6 +54,130 @@ public class NodeTransformer {
 		return replacement;
 	}
 
+	/**
+	 * Function being scanned for upvar references, linked to the function it
+	 * is nested in.
+	 */
+	private static final class UpvarFrame {
+		final UpvarFrame outer;
+		final ScriptNode tree;
+		// scope of the outer function the closure is created in
+		final Scope definitionScope;
+		// closure is created inside a with, catch or let block of the outer function
+		final boolean definedInBlock;
+		final boolean createsScopeObjects;
+		final boolean hasSpecialCall;
+
+		UpvarFrame(UpvarFrame outer, ScriptNode tree, Scope definitionScope, boolean definedInBlock) {
+			this.outer = outer;
+			this.tree = tree;
+			this.definitionScope = definitionScope;
+			this.definedInBlock = definedInBlock;
+			this.createsScopeObjects = tree.getType() != Token.FUNCTION || ((FunctionNode) tree).requiresActivation();
+			this.hasSpecialCall = hasSpecialCall(tree);
+		}
+	}
+
+	private static boolean hasSpecialCall(Node parent) {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNext()) {
+			if (node.getIntProp(Node.SPECIALCALL_PROP, Node.NON_SPECIALCALL) != Node.NON_SPECIALCALL || hasSpecialCall(node)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Marks NAME and SETNAME nodes that refer to a parameter or variable of an
+	 * enclosing function with its lexical address: the function that defines
+	 * it and the number of activation objects between the reference and that
+	 * function at runtime. Names that are not defined by any enclosing function
+	 * are marked with the script itself, so reads can go through a property
+	 * cell of the top-level scope. Anything that can put another object on the
+	 * scope chain in between (with, catch, let blocks, eval) keeps the lookup
+	 * by name.
+	 */
+	private static void resolveUpvars(UpvarFrame frame, Node parent, Scope scope, int blocked) {
+		for (Node node = parent.getFirstChild(); node != null; node = node.getNext()) {
+			int type = node.getType();
+			Scope innerScope = scope;
+			int innerBlocked = blocked;
+			if (type == Token.WITH) {
+				innerBlocked++;
+			} else if (node instanceof Scope s) {
+				innerScope = s;
+				if (frame.createsScopeObjects && s.getSymbolTable() != null && !s.getSymbolTable().isEmpty()) {
+					innerBlocked++;
+				}
+			}
+
+			switch (type) {
+				case Token.FUNCTION -> {
+					FunctionNode fn = frame.tree.getFunctionNode(node.getExistingIntProp(Node.FUNCTION_PROP));
+					resolveUpvars(new UpvarFrame(frame, fn, scope, blocked != 0), fn, fn, 0);
+				}
+				case Token.NAME -> markUpvar(frame, node, node.getString(), scope, blocked, false);
+				case Token.SETNAME -> {
+					Node nameNode = node.getFirstChild();
+					if (nameNode.getType() == Token.BINDNAME) {
+						markUpvar(frame, node, nameNode.getString(), scope, blocked, true);
+					}
+				}
+			}
+
+			resolveUpvars(frame, node, innerScope, innerBlocked);
+		}
+	}
+
+	private static void markUpvar(UpvarFrame frame, Node node, String name, Scope scope, int blocked, boolean assign) {
+		if (blocked != 0 || frame.hasSpecialCall || "arguments".equals(name)) {
+			return;
+		}
+
+		Scope defining = scope.getDefiningScope(name);
+		int depth = 0;
+		if (frame.outer == null) {
+			// top-level code: only global names, which are never assigned through a cell
+			if (assign || defining != null && defining != frame.tree) {
+				return;
+			}
+			defining = frame.tree;
+		} else if (defining != null) {
+			return;
+		} else {
+			depth = frame.createsScopeObjects ? 1 : 0;
+			for (UpvarFrame f = frame; ; f = f.outer) {
+				UpvarFrame outer = f.outer;
+				if (f.definedInBlock || f.hasSpecialCall) {
+					return;
+				}
+				defining = f.definitionScope.getDefiningScope(name);
+				if (outer.outer == null) {
+					if (assign || defining != null && defining != outer.tree) {
+						return;
+					}
+					defining = outer.tree;
+					break;
+				} else if (defining != null) {
+					if (defining != outer.tree || !outer.createsScopeObjects) {
+						return;
+					}
+					break;
+				}
+				// closures created by a function without activation see its parent scope directly
+				if (outer.createsScopeObjects) {
+					depth++;
+				}
+			}
+		}
+
+		if (depth > 0xFF || assign && defining.getSymbol(name).getDeclType() == Token.CONST) {
+			return;
+		}
+		node.putProp(Node.UPVAR_SCOPE_PROP, defining);
+		node.putIntProp(Node.UPVAR_DEPTH_PROP, depth);
+	}
+
 	private ObjArray loops;
 	private ObjArray loopEnds;
 	private boolean hasFinally;
@@ -62,6 +186,9 @@ public class NodeTransformer {
 	}
 
 	public final void transform(ScriptNode tree, CompilerEnvirons env) {
+		// Must run before the tree is lowered: let blocks lose their symbol
+		// tables once they are turned into with statements.
+		resolveUpvars(new UpvarFrame(null, tree, null, false), tree, tree, 0);
 		transform(tree, false, env);
 	}
 
@@ -0,0 +1,140 @@
+package dev.latvian.mods.rhino;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Counts resources used by scripts running on the contexts it is attached to and terminates them
+ * when a limit is exceeded.
+ * <p>
+ * Instructions are counted the same way as for {@link Context#setInstructionObserverThreshold(int)},
+ * at branches and calls of interpreted code. Objects, array elements and string characters are counted
+ * when scripts create objects and arrays, grow dense arrays and concatenate or repeat strings. Memory
+ * that becomes garbage is never subtracted, so the counters measure how much a script allocated, not
+ * how much it retains.
+ * <p>
+ * Exceeding a limit throws {@link ExceededError}, which scripts can't catch and which skips their finally
+ * blocks. To pause long-running scripts instead of terminating them, run them as a {@link ScriptTask}.
+ * Counters are not synchronized, so a quota should only be shared by contexts running on the same thread.
+ */
+public class ResourceQuota {
+	public enum Resource {
+		INSTRUCTIONS,
+		OBJECTS,
+		ARRAY_ELEMENTS,
+		STRING_CHARS,
+	}
+
+	/**
+	 * Thrown when a script exceeds one of the limits of its quota.
+	 */
+	public static class ExceededError extends Error {
+		private static final long serialVersionUID = 4362051893265147106L;
+
+		private final Resource resource;
+
+		public ExceededError(Resource resource, String message) {
+			super(message);
+			this.resource = resource;
+		}
+
+		/**
+		 * The resource that was exceeded, or null if it was time.
+		 */
+		public Resource getResource() {
+			return resource;
+		}
+	}
+
+	// Instructions between checks of the time limit, as System.nanoTime isn't free
+	private static final int TIME_CHECK_INTERVAL = 1000;
+
+	private static final Resource[] RESOURCES = Resource.values();
+
+	private final long[] used;
+	private final long[] limits;
+	private long maxTimeNanos;
+	private long startNanos;
+	private long nextTimeCheck;
+
+	public ResourceQuota() {
+		this.used = new long[RESOURCES.length];
+		this.limits = new long[RESOURCES.length];
+		Arrays.fill(limits, Long.MAX_VALUE);
+		this.maxTimeNanos = Long.MAX_VALUE;
+		resetCounters();
+	}
+
+	/**
+	 * Zeroes all counters and restarts the clock of the time limit.
+	 */
+	public void reset() {
+		resetCounters();
+	}
+
+	private void resetCounters() {
+		Arrays.fill(used, 0L);
+		startNanos = System.nanoTime();
+		nextTimeCheck = TIME_CHECK_INTERVAL;
+	}
+
+	public long getUsed(Resource resource) {
+		return used[resource.ordinal()];
+	}
+
+	public long getLimit(Resource resource) {
+		return limits[resource.ordinal()];
+	}
+
+	/**
+	 * Sets the limit of a resource, {@link Long#MAX_VALUE} for no limit.
+	 */
+	public ResourceQuota setLimit(Resource resource, long limit) {
+		if (limit < 0L) {
+			throw new IllegalArgumentException("Limit can't be negative");
+		}
+
+		limits[resource.ordinal()] = limit;
+		return this;
+	}
+
+	/**
+	 * Sets the wall time scripts may run for since the last {@link #reset()}, null for no limit.
+	 * The time is only checked while counting instructions.
+	 */
+	public ResourceQuota setMaxTime(Duration maxTime) {
+		maxTimeNanos = maxTime == null ? Long.MAX_VALUE : maxTime.toNanos();
+		return this;
+	}
+
+	public Duration getElapsedTime() {
+		return Duration.ofNanos(System.nanoTime() - startNanos);
+	}
+
+	void addInstructions(long count) {
+		int i = Resource.INSTRUCTIONS.ordinal();
+		long total = used[i] += count;
+
+		if (total > limits[i]) {
+			throw exceeded(Resource.INSTRUCTIONS);
+		} else if (total >= nextTimeCheck && maxTimeNanos != Long.MAX_VALUE) {
+			nextTimeCheck = total + TIME_CHECK_INTERVAL;
+
+			if (System.nanoTime() - startNanos > maxTimeNanos) {
+				throw new ExceededError(null, "Script exceeded the time limit of " + Duration.ofNanos(maxTimeNanos).toMillis() + " ms");
+			}
+		}
+	}
+
+	void add(Resource resource, long count) {
+		int i = resource.ordinal();
+
+		if ((used[i] += count) > limits[i]) {
+			throw exceeded(resource);
+		}
+	}
+
+	private ExceededError exceeded(Resource resource) {
+		return new ExceededError(resource, "Script exceeded the " + resource.name().toLowerCase().replace('_', ' ') + " limit of " + limits[resource.ordinal()]);
+	}
+}
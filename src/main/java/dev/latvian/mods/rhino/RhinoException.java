@@ -43,14 +43,20 @@ public abstract class RhinoException extends RuntimeException {
 	private int columnNumber;
 
 	RhinoException(Context cx) {
-		Evaluator e = Context.createInterpreter();
-		if (e != null) {
-			e.captureStackInfo(cx, this);
-		}
+		this(cx, null, null);
 	}
 
 	RhinoException(Context cx, String details) {
-		super(details);
+		this(cx, details, null);
+	}
+
+	/**
+	 * Exceptions without a Java cause only fill in their Java stack trace if
+	 * {@link Context#captureJavaStackTraces()} says so. The script stack is
+	 * recorded either way.
+	 */
+	RhinoException(Context cx, String details, Throwable cause) {
+		super(details, cause, true, cause != null || cx == null || cx.captureJavaStackTraces());
 		Evaluator e = Context.createInterpreter();
 		if (e != null) {
 			e.captureStackInfo(cx, this);
@@ -197,6 +203,10 @@ public abstract class RhinoException extends RuntimeException {
 	}
 
 	private String generateStackTrace() {
+		if (getStackTrace().length == 0) {
+			// Java stack trace was not captured, list script frames only
+			return this + System.lineSeparator() + formatStackTrace(getScriptStack(), details());
+		}
 		// Get stable reference to work properly with concurrent access
 		CharArrayWriter writer = new CharArrayWriter();
 		super.printStackTrace(new PrintWriter(writer));
@@ -312,6 +322,19 @@ public abstract class RhinoException extends RuntimeException {
 				}
 			}
 		}
+		if (stack.length == 0 && interpreterStack != null) {
+			// Without a Java stack trace the interpreter invocations can only be listed in order
+			for (ScriptStackElement[] group : interpreterStack) {
+				for (ScriptStackElement elem : group) {
+					if (!printStarted && hideFunction.equals(elem.functionName)) {
+						printStarted = true;
+					} else if (printStarted && ((limit < 0) || (count < limit))) {
+						list.add(elem);
+						count++;
+					}
+				}
+			}
+		}
 		return list.toArray(new ScriptStackElement[list.size()]);
 	}
 
@@ -0,0 +1,341 @@
+package dev.latvian.mods.rhino;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Low overhead sampling profiler for interpreted scripts.
+ * <p>
+ * While started, a daemon thread periodically records the interpreter call stack of every
+ * attached {@link Context}. Contexts that are not running a script are skipped. The samples
+ * are aggregated into per-function statistics and can be written in the folded stack format
+ * understood by flame graph tools.
+ * <p>
+ * Stacks are read without synchronizing with the thread running the script, so every sample is
+ * a best-effort snapshot. Calls are counted exactly, but only while the context is attached.
+ */
+public class ScriptProfiler {
+	/**
+	 * Aggregated data for one function.
+	 *
+	 * @param name         function name, <code>&lt;anonymous&gt;</code> or <code>&lt;script&gt;</code>
+	 * @param sourceName   source the function was compiled from
+	 * @param lineNumber   first line of the function, or -1 if unknown
+	 * @param calls        number of times the function was called while profiled
+	 * @param selfSamples  samples in which the function was on top of the stack
+	 * @param totalSamples samples in which the function was anywhere on the stack
+	 * @param selfMillis   estimated time spent in the function itself
+	 * @param totalMillis  estimated time spent in the function and its callees
+	 */
+	public record FunctionStats(String name, String sourceName, int lineNumber, long calls, long selfSamples, long totalSamples, double selfMillis, double totalMillis) {
+	}
+
+	private static final class Stack {
+		private final InterpreterData[] functions;
+		private final int[] lines;
+		private final int hash;
+
+		private Stack(InterpreterData[] functions, int[] lines) {
+			this.functions = functions;
+			this.lines = lines;
+			this.hash = 31 * Arrays.hashCode(functions) + Arrays.hashCode(lines);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return this == o || o instanceof Stack s && hash == s.hash && Arrays.equals(functions, s.functions) && Arrays.equals(lines, s.lines);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private final long intervalNanos;
+	private final int maxDepth;
+	private final List<Context> contexts;
+	private final Map<InterpreterData, LongAdder> calls;
+	private final Map<Stack, long[]> stacks;
+	private long sampleCount;
+	private Thread thread;
+
+	public ScriptProfiler(Duration interval, int maxDepth) {
+		if (interval.isNegative() || interval.isZero()) {
+			throw new IllegalArgumentException("Sampling interval must be positive");
+		}
+
+		if (maxDepth <= 0) {
+			throw new IllegalArgumentException("Max depth must be positive");
+		}
+
+		this.intervalNanos = interval.toNanos();
+		this.maxDepth = maxDepth;
+		this.contexts = new CopyOnWriteArrayList<>();
+		this.calls = new ConcurrentHashMap<>();
+		this.stacks = new HashMap<>();
+	}
+
+	public ScriptProfiler() {
+		this(Duration.ofMillis(1L), 128);
+	}
+
+	/**
+	 * Starts sampling attached contexts and counting their calls.
+	 */
+	public void attach(Context cx) {
+		if (cx.profiler != this) {
+			if (cx.profiler != null) {
+				cx.profiler.detach(cx);
+			}
+
+			cx.profiler = this;
+			contexts.add(cx);
+		}
+	}
+
+	public void detach(Context cx) {
+		if (cx.profiler == this) {
+			cx.profiler = null;
+		}
+
+		contexts.remove(cx);
+	}
+
+	public synchronized void start() {
+		if (thread == null) {
+			thread = new Thread(this::run, "Rhino Script Profiler");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	public void stop() {
+		Thread t;
+
+		synchronized (this) {
+			t = thread;
+			thread = null;
+		}
+
+		if (t != null) {
+			t.interrupt();
+
+			try {
+				t.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public synchronized boolean isRunning() {
+		return thread != null;
+	}
+
+	/**
+	 * Discards all samples and call counts collected so far.
+	 */
+	public synchronized void reset() {
+		calls.clear();
+		stacks.clear();
+		sampleCount = 0L;
+	}
+
+	public synchronized long getSampleCount() {
+		return sampleCount;
+	}
+
+	public Duration getInterval() {
+		return Duration.ofNanos(intervalNanos);
+	}
+
+	final void countCall(InterpreterData idata) {
+		calls.computeIfAbsent(idata, k -> new LongAdder()).increment();
+	}
+
+	private void run() {
+		var functions = new InterpreterData[maxDepth];
+		var lines = new int[maxDepth];
+		long next = System.nanoTime();
+
+		while (!Thread.currentThread().isInterrupted()) {
+			next += intervalNanos;
+			long delay;
+
+			while ((delay = next - System.nanoTime()) > 0L) {
+				LockSupport.parkNanos(this, delay);
+
+				if (Thread.currentThread().isInterrupted()) {
+					return;
+				}
+			}
+
+			for (var cx : contexts) {
+				sample(cx, functions, lines);
+			}
+
+			// Don't try to catch up after a long pause, e.g. GC
+			long now = System.nanoTime();
+
+			if (now - next > intervalNanos) {
+				next = now;
+			}
+		}
+	}
+
+	/**
+	 * Records one sample of the script stack currently running in cx.
+	 */
+	public void sample(Context cx) {
+		sample(cx, new InterpreterData[maxDepth], new int[maxDepth]);
+	}
+
+	private void sample(Context cx, InterpreterData[] functions, int[] lines) {
+		int depth = Interpreter.sampleStack(cx, functions, lines);
+
+		if (depth == 0) {
+			return;
+		}
+
+		// Store root frame first, as flame graphs expect
+		var f = new InterpreterData[depth];
+		var l = new int[depth];
+
+		for (int i = 0; i < depth; i++) {
+			f[i] = functions[depth - 1 - i];
+			l[i] = lines[depth - 1 - i];
+		}
+
+		var key = new Stack(f, l);
+
+		synchronized (this) {
+			sampleCount++;
+			stacks.computeIfAbsent(key, k -> new long[1])[0]++;
+		}
+	}
+
+	/**
+	 * Returns statistics of every function that was sampled or called, sorted by self time.
+	 */
+	public synchronized List<FunctionStats> getFunctionStats() {
+		var self = new IdentityHashMap<InterpreterData, long[]>();
+		var total = new IdentityHashMap<InterpreterData, long[]>();
+		var seen = new IdentityHashMap<InterpreterData, Boolean>();
+
+		for (var entry : stacks.entrySet()) {
+			var functions = entry.getKey().functions;
+			long count = entry.getValue()[0];
+			self.computeIfAbsent(functions[functions.length - 1], k -> new long[1])[0] += count;
+			seen.clear();
+
+			for (var f : functions) {
+				// Recursive functions only count once per sample
+				if (seen.put(f, Boolean.TRUE) == null) {
+					total.computeIfAbsent(f, k -> new long[1])[0] += count;
+				}
+			}
+		}
+
+		var all = new IdentityHashMap<InterpreterData, Boolean>();
+
+		for (var f : total.keySet()) {
+			all.put(f, Boolean.TRUE);
+		}
+
+		for (var f : calls.keySet()) {
+			all.put(f, Boolean.TRUE);
+		}
+
+		double millisPerSample = intervalNanos / 1_000_000D;
+		var list = new ArrayList<FunctionStats>(all.size());
+
+		for (var f : all.keySet()) {
+			var c = calls.get(f);
+			var s = self.get(f);
+			var t = total.get(f);
+			long selfSamples = s == null ? 0L : s[0];
+			long totalSamples = t == null ? 0L : t[0];
+			int line = f.firstLinePC >= 0 ? Interpreter.getIndex(f.itsICode, f.firstLinePC) : -1;
+			list.add(new FunctionStats(getName(f), f.itsSourceFile, line, c == null ? 0L : c.sum(), selfSamples, totalSamples, selfSamples * millisPerSample, totalSamples * millisPerSample));
+		}
+
+		list.sort(Comparator.comparingLong(FunctionStats::selfSamples).thenComparingLong(FunctionStats::totalSamples).thenComparingLong(FunctionStats::calls).reversed());
+		return list;
+	}
+
+	/**
+	 * Writes the samples in the folded stack format, one <code>root;...;leaf count</code> line per unique stack.
+	 *
+	 * @param lineNumbers if true, every frame includes the line it was executing, otherwise the first line of the function
+	 */
+	public synchronized void writeFoldedStacks(Appendable out, boolean lineNumbers) {
+		var folded = new HashMap<String, long[]>();
+		var sb = new StringBuilder();
+
+		for (var entry : stacks.entrySet()) {
+			var stack = entry.getKey();
+			sb.setLength(0);
+
+			for (int i = 0; i < stack.functions.length; i++) {
+				if (i > 0) {
+					sb.append(';');
+				}
+
+				var f = stack.functions[i];
+				int line = lineNumbers ? stack.lines[i] : f.firstLinePC >= 0 ? Interpreter.getIndex(f.itsICode, f.firstLinePC) : -1;
+				appendFrame(sb, f, line);
+			}
+
+			folded.computeIfAbsent(sb.toString(), k -> new long[1])[0] += entry.getValue()[0];
+		}
+
+		var keys = new ArrayList<>(folded.keySet());
+		keys.sort(null);
+
+		try {
+			for (var key : keys) {
+				out.append(key).append(' ').append(String.valueOf(folded.get(key)[0])).append('\n');
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	public String getFoldedStacks(boolean lineNumbers) {
+		var sb = new StringBuilder();
+		writeFoldedStacks(sb, lineNumbers);
+		return sb.toString();
+	}
+
+	private static String getName(InterpreterData f) {
+		if (f.itsName != null && !f.itsName.isEmpty()) {
+			return f.itsName;
+		}
+
+		return f.itsFunctionType == 0 ? "<script>" : "<anonymous>";
+	}
+
+	private static void appendFrame(StringBuilder sb, InterpreterData f, int line) {
+		// ';' separates frames and trailing ' ' separates the count in folded format
+		sb.append(getName(f).replace(';', ':')).append(" (").append(String.valueOf(f.itsSourceFile).replace(';', ':'));
+
+		if (line >= 0) {
+			sb.append(':').append(line);
+		}
+
+		sb.append(')');
+	}
+}
@@ -2110,15 +2110,15 @@ public class ScriptRuntime {
 			}
 			return wrapNumber(toNumber(cx, val1) + toNumber(cx, val2));
 		}
-		return ConsString.flatten(toCharSequence(cx, val1), toCharSequence(cx, val2));
+		return ConsString.flatten(cx, toCharSequence(cx, val1), toCharSequence(cx, val2));
 	}
 
 	public static String add(Context cx, CharSequence val1, Object val2) {
-		return ConsString.flatten(val1, toCharSequence(cx, val2));
+		return ConsString.flatten(cx, val1, toCharSequence(cx, val2));
 	}
 
 	public static String add(Context cx, Object val1, CharSequence val2) {
-		return ConsString.flatten(toCharSequence(cx, val1), val2);
+		return ConsString.flatten(cx, toCharSequence(cx, val1), val2);
 	}
 
 	public static Object nameIncrDecr(Context cx, Scriptable scopeChain, String id, int incrDecrMask) {
@@ -2623,10 +2623,17 @@ public class ScriptRuntime {
 
 	/**
 	 * Adds to the current count of executed instructions and notifies the context's
-	 * instruction observer when the configured threshold is exceeded. Used by long-running
-	 * native loops (such as the regexp engine) so they remain interruptible.
+	 * instruction observer when the configured threshold is exceeded, or its resource quota
+	 * when it has one. Used by long-running native loops (such as the regexp engine) so they
+	 * remain interruptible.
 	 */
 	public static void addInstructionCount(Context cx, int instructionsToAdd) {
+		if (cx.quota != null) {
+			cx.quota.addInstructions(instructionsToAdd);
+		}
+		if (cx.instructionThreshold == 0) {
+			return;
+		}
 		cx.instructionCount += instructionsToAdd;
 		if (cx.instructionCount > cx.instructionThreshold) {
 			cx.observeInstructionCount(cx.instructionCount);
@@ -0,0 +1,194 @@
+package dev.latvian.mods.rhino;
+
+import java.time.Duration;
+
+/**
+ * Script or function call that can be spread over several calls to {@link #run(long, Duration)},
+ * for example one per server tick.
+ * <p>
+ * Every run executes until the script finishes or the instruction or time budget of that run is
+ * used up. In the latter case the interpreter stack is suspended at the next branch, such as a loop
+ * iteration, and the next run continues from there. Functions called from Java code, for example
+ * callbacks of <code>Array.prototype.forEach</code>, count towards the budget but can't be suspended,
+ * so the task only yields after they return.
+ * <p>
+ * A task belongs to the context it was created with and must only be run on it.
+ */
+public final class ScriptTask {
+	// Instructions between checks of the deadline, as System.nanoTime isn't free
+	private static final int TIME_CHECK_INTERVAL = 1000;
+
+	private final Context cx;
+	private final Scriptable scope;
+	private final Callable callable;
+	private final Scriptable thisObj;
+	private final Object[] args;
+	private final boolean strict;
+	private boolean started;
+	private boolean running;
+	private boolean done;
+	private Object result;
+	private RuntimeException exception;
+	private int slices;
+
+	// Suspended interpreter frame, see Interpreter#resumeTask
+	Object state;
+	// Instructions executed in the current run
+	long instructions;
+	private long instructionLimit;
+	private long nextTimeCheck;
+	private long deadline;
+
+	public ScriptTask(Context cx, Scriptable scope, Script script) {
+		this.cx = cx;
+		this.scope = scope;
+		this.thisObj = scope;
+		this.args = ScriptRuntime.EMPTY_OBJECTS;
+
+		if (script instanceof InterpretedFunction f && f.isScript()) {
+			this.callable = f;
+			this.strict = f.idata.isStrict;
+		} else {
+			this.callable = (c, s, t, a) -> script.exec(c, s);
+			this.strict = false;
+		}
+	}
+
+	public ScriptTask(Context cx, Scriptable scope, Callable function, Scriptable thisObj, Object[] args) {
+		this.cx = cx;
+		this.scope = scope;
+		this.callable = function;
+		this.thisObj = thisObj;
+		this.args = args;
+		this.strict = function instanceof InterpretedFunction f && f.idata.isStrict;
+	}
+
+	/**
+	 * Runs the task until it finishes or has executed roughly <code>maxInstructions</code>
+	 * instructions or spent <code>maxTime</code>, whichever comes first.
+	 *
+	 * @return true if the task has finished
+	 * @throws RuntimeException thrown by the script, after which the task is finished
+	 */
+	public boolean run(long maxInstructions, Duration maxTime) {
+		return runSlice(maxInstructions, maxTime.toNanos());
+	}
+
+	public boolean run(long maxInstructions) {
+		return runSlice(maxInstructions, Long.MAX_VALUE);
+	}
+
+	public boolean run(Duration maxTime) {
+		return runSlice(Long.MAX_VALUE, maxTime.toNanos());
+	}
+
+	private boolean runSlice(long maxInstructions, long nanos) {
+		if (done) {
+			return true;
+		} else if (running) {
+			throw new IllegalStateException("Task is already running");
+		} else if (maxInstructions <= 0L) {
+			throw new IllegalArgumentException("Instruction budget must be positive");
+		}
+
+		instructions = 0L;
+		instructionLimit = maxInstructions;
+		// Durations long enough to overflow the deadline are the same as no limit at all
+		nextTimeCheck = nanos < Long.MAX_VALUE / 2L ? TIME_CHECK_INTERVAL : Long.MAX_VALUE;
+		deadline = System.nanoTime() + Math.min(nanos, Long.MAX_VALUE / 2L);
+		running = true;
+		slices++;
+
+		ScriptTask previousTask = cx.task;
+		cx.task = this;
+
+		try {
+			Object r;
+
+			if (cx.hasTopCallScope()) {
+				r = step(cx);
+			} else {
+				r = cx.doTopCall(scope, (c, s, t, a) -> step(c), thisObj, args, strict);
+			}
+
+			if (state == null) {
+				done = true;
+				result = r;
+			}
+		} catch (RuntimeException ex) {
+			done = true;
+			state = null;
+			exception = ex;
+			throw ex;
+		} finally {
+			running = false;
+			cx.task = previousTask;
+		}
+
+		return done;
+	}
+
+	private Object step(Context cx) {
+		if (started) {
+			return Interpreter.resumeTask(cx, this);
+		}
+
+		started = true;
+
+		if (callable instanceof InterpretedFunction f) {
+			return Interpreter.startTask(cx, this, f, scope, thisObj, args);
+		}
+
+		return callable.call(cx, scope, thisObj, args);
+	}
+
+	/**
+	 * Called by the interpreter at branches of the suspendable frames.
+	 */
+	boolean isBudgetUsed() {
+		if (instructions >= instructionLimit) {
+			return true;
+		} else if (instructions >= nextTimeCheck) {
+			nextTimeCheck = instructions + TIME_CHECK_INTERVAL;
+			return System.nanoTime() - deadline >= 0L;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Discards the suspended script stack without running any more of it, including finally blocks.
+	 */
+	public void cancel() {
+		if (running) {
+			throw new IllegalStateException("Task is running");
+		}
+
+		done = true;
+		state = null;
+	}
+
+	public boolean isDone() {
+		return done;
+	}
+
+	/**
+	 * Number of runs it took to finish the task so far.
+	 */
+	public int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * Returns the result of the finished script or rethrows its exception.
+	 */
+	public Object getResult() {
+		if (!done) {
+			throw new IllegalStateException("Task hasn't finished");
+		} else if (exception != null) {
+			throw exception;
+		}
+
+		return result;
+	}
+}
@@ -15,9 +15,12 @@ import dev.latvian.mods.rhino.util.WrappedReflectionMethod;
 
 import java.io.Serial;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
 
 /**
@@ -84,7 +87,6 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 
 	public static final int CONST = PERMANENT | READONLY | UNINITIALIZED_CONST;
 	private static final WrappedExecutable GET_ARRAY_LENGTH = (cx, scope, self, args) -> ((ScriptableObject) self).getExternalArrayLength();
-	private static final Comparator<Object> KEY_COMPARATOR = new KeyComparator();
 
 	/**
 	 * This is the object that is stored in the SlotMap. For historical reasons it remains
@@ -96,6 +98,7 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 		Object value;
 		transient Slot next; // next in hash table bucket
 		transient Slot orderedNext; // next in linked list
+		transient boolean removed; // deleted or replaced, cached references must look it up again
 		private short attributes;
 
 		Slot(Object name, int indexOrHash, int attributes) {
@@ -868,8 +871,9 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 	/**
 	 * This holds all the slots. It may or may not be thread-safe, and may expand itself to
 	 * a different data structure depending on the size of the object.
+	 * Not volatile, {@link #makeThreadSafe()} replaces it before the object is published to other threads.
 	 */
-	private final transient SlotMapContainer slotMap;
+	private transient SlotMapContainer slotMap;
 	/**
 	 * The prototype of this object.
 	 */
@@ -883,6 +887,9 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 	private volatile Map<Object, Object> associatedValues;
 	private boolean isExtensible = true;
 	private boolean isSealed = false;
+	// Enumerable ids, valid while idsCacheShape matches the shape of slotMap
+	private transient Object[] idsCache;
+	private transient int idsCacheShape;
 
 	public ScriptableObject() {
 		slotMap = createSlotMap(0);
@@ -974,6 +981,14 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 		return slot.getValue(start, cx);
 	}
 
+	/**
+	 * Returns the slot holding a named property, or null. Callers may keep
+	 * it as long as the property can not be deleted or redefined.
+	 */
+	final Slot querySlot(String name) {
+		return slotMap.query(name, 0);
+	}
+
 	/**
 	 * Returns the value of the indexed property or NOT_FOUND.
 	 *
@@ -1248,7 +1263,7 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 	 */
 	public void setAttributes(Context cx, String name, int attributes) {
 		checkNotSealed(cx, name, 0);
-		findAttributeSlot(cx, name, 0, SlotAccess.MODIFY).setAttributes(attributes);
+		setSlotAttributes(findAttributeSlot(cx, name, 0, SlotAccess.MODIFY), attributes);
 	}
 
 	/**
@@ -1265,7 +1280,13 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 	 */
 	public void setAttributes(Context cx, int index, int attributes) {
 		checkNotSealed(cx, null, index);
-		findAttributeSlot(cx, null, index, SlotAccess.MODIFY).setAttributes(attributes);
+		setSlotAttributes(findAttributeSlot(cx, null, index, SlotAccess.MODIFY), attributes);
+	}
+
+	private void setSlotAttributes(Slot slot, int attributes) {
+		slot.setAttributes(attributes);
+		// Enumerable ids may have changed, see getIds
+		slotMap.shape++;
 	}
 
 	/**
@@ -1273,7 +1294,7 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 	 */
 	public void setAttributes(Context cx, Symbol key, int attributes) {
 		checkNotSealed(cx, key, 0);
-		findAttributeSlot(cx, key, SlotAccess.MODIFY).setAttributes(attributes);
+		setSlotAttributes(findAttributeSlot(cx, key, SlotAccess.MODIFY), attributes);
 	}
 
 	/**
@@ -1768,7 +1789,7 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 			}
 
 			gslot.value = Undefined.INSTANCE;
-			gslot.setAttributes(attributes);
+			setSlotAttributes(gslot, attributes);
 		} else {
 			if (slot instanceof GetterSlot && isDataDescriptor(desc, cx)) {
 				slot = getSlot(cx, id, SlotAccess.CONVERT_ACCESSOR_TO_DATA);
@@ -1780,7 +1801,7 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 			} else if (isNew) {
 				slot.value = Undefined.INSTANCE;
 			}
-			slot.setAttributes(attributes);
+			setSlotAttributes(slot, attributes);
 		}
 	}
 
@@ -1976,6 +1997,73 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 		}
 	}
 
+	/**
+	 * Makes adding, removing and looking up properties of this object safe while several threads use it at once,
+	 * at the cost of a shared lock on lookups and an exclusive one when properties are added or removed.
+	 * <p>
+	 * Must be called before the object is published to other threads, for example before handing it to an executor
+	 * or storing it in a concurrent collection. The slot map is swapped without synchronization, so threads that
+	 * already use the object may keep seeing the old, unsynchronized one.
+	 *
+	 * @see #makeScopeThreadSafe(Context, Scriptable)
+	 */
+	public void makeThreadSafe() {
+		if (!(slotMap instanceof ThreadSafeSlotMapContainer)) {
+			slotMap = new ThreadSafeSlotMapContainer(slotMap.map);
+		}
+	}
+
+	public boolean isThreadSafe() {
+		return slotMap instanceof ThreadSafeSlotMapContainer;
+	}
+
+	/**
+	 * Makes every object reachable from the scope thread-safe, following property values, accessors, prototypes and
+	 * parent scopes, so that one initialized library scope can be shared by scripts running on several threads.
+	 * Each thread should still run its scripts in its own top level scope that has the shared scope as its prototype,
+	 * so that their global variables don't mix. Sealing the shared scope as well keeps scripts from modifying it.
+	 * Like {@link #makeThreadSafe()}, this must be done before the scope is published to other threads.
+	 */
+	public static void makeScopeThreadSafe(Context cx, Scriptable scope) {
+		var visited = Collections.newSetFromMap(new IdentityHashMap<>());
+		var pending = new ArrayList<Object>();
+		pending.add(scope);
+
+		while (!pending.isEmpty()) {
+			if (!(pending.removeLast() instanceof ScriptableObject obj) || !visited.add(obj)) {
+				continue;
+			}
+
+			obj.makeThreadSafe();
+			pending.add(obj.prototypeObject);
+			pending.add(obj.parentScopeObject);
+
+			final long stamp = obj.slotMap.readLock();
+
+			try {
+				for (Slot slot : obj.slotMap) {
+					pending.add(slot.value);
+
+					if (slot instanceof GetterSlot gslot) {
+						pending.add(gslot.getter);
+						pending.add(gslot.setter);
+					}
+				}
+			} finally {
+				obj.slotMap.unlockRead(stamp);
+			}
+
+			if (obj instanceof IdScriptableObject) {
+				// Built-in properties aren't stored in slots
+				for (Object id : obj.getIds(cx, true, false)) {
+					if (id instanceof String name && obj.slotMap.query(name, 0) == null) {
+						pending.add(obj.get(cx, name, obj));
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Return true if this object is sealed.
 	 *
@@ -2137,6 +2225,43 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 	}
 
 	Object[] getIds(Context cx, boolean getNonEnumerable, boolean getSymbols) {
+		if (!getNonEnumerable && !getSymbols && canCacheIds(cx)) {
+			Object[] ids = getCachedIds(cx);
+			return ids.length == 0 ? ids : ids.clone();
+		}
+
+		return collectIds(cx, getNonEnumerable, getSymbols);
+	}
+
+	/**
+	 * Same as {@link #getIds(Context)}, but the returned array may be shared with other callers and must not be modified.
+	 * Enumerating the keys of an unchanged object this way doesn't allocate.
+	 */
+	Object[] getSharedIds(Context cx) {
+		return getIds(cx);
+	}
+
+	/*
+	Enumerable ids are cached until the shape of the slot map changes, except for thread-safe objects, which
+	would need the cache to be synchronized, and for external array data, which can change size at any time.
+	*/
+	final boolean canCacheIds(Context cx) {
+		return cx != null && externalData == null && !(slotMap instanceof ThreadSafeSlotMapContainer);
+	}
+
+	final Object[] getCachedIds(Context cx) {
+		Object[] ids = idsCache;
+
+		if (ids == null || idsCacheShape != slotMap.shape) {
+			ids = collectIds(cx, false, false);
+			idsCache = ids;
+			idsCacheShape = slotMap.shape;
+		}
+
+		return ids;
+	}
+
+	private Object[] collectIds(Context cx, boolean getNonEnumerable, boolean getSymbols) {
 		Object[] a;
 		int externalLen = (externalData == null ? 0 : externalData.getArrayLength());
 
@@ -2182,12 +2307,52 @@ public abstract class ScriptableObject implements Scriptable, SymbolScriptable,
 
 		if (cx != null) {
 			// Move all the numeric IDs to the front in numeric order
-			Arrays.sort(result, KEY_COMPARATOR);
+			orderIds(result);
 		}
 
 		return result;
 	}
 
+	/*
+	Same order as sorting with KeyComparator: integer keys first in ascending order, then all other keys in
+	insertion order. Objects usually have no integer keys, or have them already in order, so nothing is sorted.
+	*/
+	private static void orderIds(Object[] ids) {
+		int ints = 0;
+		boolean ordered = true;
+		int last = Integer.MIN_VALUE;
+
+		for (int i = 0; i < ids.length; i++) {
+			if (ids[i] instanceof Integer index) {
+				if (ints != i || index < last) {
+					ordered = false;
+				}
+
+				last = index;
+				ints++;
+			}
+		}
+
+		if (ordered) {
+			return;
+		}
+
+		Object[] others = new Object[ids.length - ints];
+		int i = 0;
+		int o = 0;
+
+		for (Object id : ids) {
+			if (id instanceof Integer) {
+				ids[i++] = id;
+			} else {
+				others[o++] = id;
+			}
+		}
+
+		Arrays.sort(ids, 0, ints);
+		System.arraycopy(others, 0, ids, ints, o);
+	}
+
 	protected ScriptableObject getOwnPropertyDescriptor(Context cx, Object id) {
 		Slot slot = getSlot(cx, id, SlotAccess.QUERY);
 		if (slot == null) {
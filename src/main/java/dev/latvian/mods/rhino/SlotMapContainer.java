@@ -26,6 +26,10 @@ class SlotMapContainer implements SlotMap {
 
 	protected SlotMap map;
 
+	// Incremented whenever slots are added, removed or replaced or their attributes change, but not when values
+	// are written to existing slots, see ScriptableObject#getIds
+	int shape;
+
 	SlotMapContainer(int initialSize) {
 		if (initialSize > LARGE_HASH_SIZE) {
 			map = new HashSlotMap();
@@ -34,6 +38,10 @@ class SlotMapContainer implements SlotMap {
 		}
 	}
 
+	SlotMapContainer(SlotMap map) {
+		this.map = map;
+	}
+
 	@Override
 	public int size() {
 		return map.size();
@@ -50,10 +58,32 @@ class SlotMapContainer implements SlotMap {
 
 	@Override
 	public Slot get(Object key, int index, SlotAccess accessType) {
-		if (accessType != SlotAccess.QUERY) {
-			checkMapSize();
+		if (accessType == SlotAccess.QUERY) {
+			return map.get(key, index, accessType);
 		}
-		return map.get(key, index, accessType);
+
+		checkMapSize();
+		return getAndUpdateShape(key, index, accessType);
+	}
+
+	/*
+	Writes to existing slots go through MODIFY and neither add nor replace a slot, which only changes the size.
+	The other modifying access types are rare and may replace the slot, so they always change the shape.
+	*/
+	final Slot getAndUpdateShape(Object key, int index, SlotAccess accessType) {
+		if (accessType != SlotAccess.MODIFY) {
+			shape++;
+			return map.get(key, index, accessType);
+		}
+
+		int size = map.size();
+		Slot slot = map.get(key, index, accessType);
+
+		if (map.size() != size) {
+			shape++;
+		}
+
+		return slot;
 	}
 
 	@Override
@@ -64,11 +94,13 @@ class SlotMapContainer implements SlotMap {
 	@Override
 	public void addSlot(Slot newSlot) {
 		checkMapSize();
+		shape++;
 		map.addSlot(newSlot);
 	}
 
 	@Override
 	public void remove(Object key, int index, Context cx) {
+		shape++;
 		map.remove(key, index, cx);
 	}
 
@@ -83,7 +115,7 @@ class SlotMapContainer implements SlotMap {
 	}
 
 	public void unlockRead(long stamp) {
-		// No locking in the default implementationock.unlockRead(stamp);
+		// No locking in the default implementation
 	}
 
 	/**
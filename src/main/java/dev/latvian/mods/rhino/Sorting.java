@@ -4,110 +4,301 @@
 
 package dev.latvian.mods.rhino;
 
+import java.util.Arrays;
 import java.util.Comparator;
 
 public final class Sorting {
-	private static final int SMALLSORT = 16;
+	/*
+	Runs shorter than this are extended with binary insertion sort before merging.
+	*/
+	private static final int MIN_MERGE = 32;
 
 	private static final Sorting sorting = new Sorting();
 
+	// Elements paired with a precomputed sort key, see sortArray
+	private static final class Keyed {
+		final Object value;
+		final String str;
+		final double num;
+
+		Keyed(Object value, String str, double num) {
+			this.value = value;
+			this.str = str;
+			this.num = num;
+		}
+	}
+
+	private static final Comparator<Object> STRING_KEY = (x, y) -> ((Keyed) x).str.compareTo(((Keyed) y).str);
+
+	// Not Double.compare, so that -0 and +0 stay equal as they are for a - b
+	private static final Comparator<Object> NUMBER_KEY = (x, y) -> {
+		double a = ((Keyed) x).num;
+		double b = ((Keyed) y).num;
+		return a < b ? -1 : a > b ? 1 : 0;
+	};
+
 	public static Sorting get() {
 		return sorting;
 	}
 
-	private static void insertionSort(Object[] a, int start, int end, Comparator<Object> cmp) {
-		int i = start;
-		while (i <= end) {
+	/*
+	Stable binary insertion sort of a[lo, hi) where a[lo, start) is already sorted.
+	*/
+	private static void binaryInsertionSort(Object[] a, int lo, int hi, int start, Comparator<Object> cmp) {
+		for (int i = start; i < hi; i++) {
 			Object x = a[i];
-			int j = i - 1;
-			while ((j >= start) && (cmp.compare(a[j], x) > 0)) {
-				a[j + 1] = a[j];
-				j--;
+			int left = lo;
+			int right = i;
+			// Insert after equal elements to keep the sort stable
+			while (left < right) {
+				int mid = (left + right) >>> 1;
+				if (cmp.compare(x, a[mid]) < 0) {
+					right = mid;
+				} else {
+					left = mid + 1;
+				}
 			}
-			a[j + 1] = x;
-			i++;
+			System.arraycopy(a, left, a, left + 1, i - left);
+			a[left] = x;
 		}
 	}
 
-	private static void swap(Object[] a, int l, int h) {
-		final Object tmp = a[l];
-		a[l] = a[h];
-		a[h] = tmp;
-	}
+	/*
+	Returns the length of the run starting at lo, reversing it if it is strictly descending.
+	Reversing only strictly descending runs keeps the sort stable.
+	*/
+	private static int countRunAndMakeAscending(Object[] a, int lo, int hi, Comparator<Object> cmp) {
+		int runHi = lo + 1;
+		if (runHi == hi) {
+			return 1;
+		}
 
-	private static int log2(int n) {
-		return (int) (Math.log10(n) / Math.log10(2.0));
-	}
+		if (cmp.compare(a[runHi++], a[lo]) < 0) {
+			while (runHi < hi && cmp.compare(a[runHi], a[runHi - 1]) < 0) {
+				runHi++;
+			}
+			for (int i = lo, j = runHi - 1; i < j; i++, j--) {
+				Object t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		} else {
+			while (runHi < hi && cmp.compare(a[runHi], a[runHi - 1]) >= 0) {
+				runHi++;
+			}
+		}
 
-	private Sorting() {
+		return runHi - lo;
 	}
 
-	public void insertionSort(Object[] a, Comparator<Object> cmp) {
-		insertionSort(a, 0, a.length - 1, cmp);
+	private static int minRunLength(int n) {
+		int r = 0;
+		while (n >= MIN_MERGE) {
+			r |= (n & 1);
+			n >>= 1;
+		}
+		return n + r;
 	}
 
 	/*
-	Hybrid sorting mechanism similar to Introsort by David Musser. Uses quicksort's
-	partitioning mechanism recursively until the resulting array is small or the
-	recursion is too deep, and then use insertion sort for the rest.
-	This is the same basic algorithm used by the GNU Standard C++ library.
+	Number of elements in a[base, base + len) that are less than or equal to key.
 	*/
-	public void hybridSort(Object[] a, Comparator<Object> cmp) {
-		hybridSort(a, 0, a.length - 1, cmp, log2(a.length) * 2);
+	private static int upperBound(Object key, Object[] a, int base, int len, Comparator<Object> cmp) {
+		int left = 0;
+		int right = len;
+		while (left < right) {
+			int mid = (left + right) >>> 1;
+			if (cmp.compare(key, a[base + mid]) < 0) {
+				right = mid;
+			} else {
+				left = mid + 1;
+			}
+		}
+		return left;
 	}
 
-	private void hybridSort(Object[] a, int start, int end, Comparator<Object> cmp, int maxdepth) {
-		if (start < end) {
-			if ((maxdepth == 0) || ((end - start) <= SMALLSORT)) {
-				insertionSort(a, start, end, cmp);
+	/*
+	Number of elements in a[base, base + len) that are less than key.
+	*/
+	private static int lowerBound(Object key, Object[] a, int base, int len, Comparator<Object> cmp) {
+		int left = 0;
+		int right = len;
+		while (left < right) {
+			int mid = (left + right) >>> 1;
+			if (cmp.compare(a[base + mid], key) < 0) {
+				left = mid + 1;
 			} else {
-				int p = partition(a, start, end, cmp);
-				hybridSort(a, start, p, cmp, maxdepth - 1);
-				hybridSort(a, p + 1, end, cmp, maxdepth - 1);
+				right = mid;
 			}
 		}
+		return left;
 	}
 
 	/*
-	Quicksort-style partitioning, using the Hoare partition scheme as coded by
-	Sedgewick at https://algs4.cs.princeton.edu/23quicksort/Quick.java.html.
-	Use the "median of three" method to determine which index to pivot on, and then
-	separate the array into two halves based on the pivot.
+	State of one stable merge sort, in the style of TimSort: natural runs are found
+	and extended to a minimum length, then merged while keeping the run lengths on the
+	stack roughly following the Fibonacci sequence. Merges first skip the parts of
+	both runs that are already in place. Unlike java.util.Arrays.sort this never
+	checks the comparator for consistency, as script comparators often aren't.
 	*/
-	private int partition(Object[] a, int start, int end, Comparator<Object> cmp) {
-		final int p = median(a, start, end, cmp);
-		final Object pivot = a[p];
-		a[p] = a[start];
-		a[start] = pivot;
-
-		int i = start;
-		int j = end + 1;
-
-		while (true) {
-			while (cmp.compare(a[++i], pivot) < 0) {
-				if (i == end) {
+	private static final class MergeState {
+		private final Object[] a;
+		private final Comparator<Object> cmp;
+		private final int[] runBase = new int[49];
+		private final int[] runLen = new int[49];
+		private int stackSize;
+		private Object[] tmp;
+
+		private MergeState(Object[] a, Comparator<Object> cmp) {
+			this.a = a;
+			this.cmp = cmp;
+		}
+
+		private void pushRun(int base, int len) {
+			runBase[stackSize] = base;
+			runLen[stackSize] = len;
+			stackSize++;
+		}
+
+		private void mergeCollapse() {
+			while (stackSize > 1) {
+				int n = stackSize - 2;
+				if (n > 0 && runLen[n - 1] <= runLen[n] + runLen[n + 1] || n > 1 && runLen[n - 2] <= runLen[n] + runLen[n - 1]) {
+					if (runLen[n - 1] < runLen[n + 1]) {
+						n--;
+					}
+				} else if (runLen[n] > runLen[n + 1]) {
 					break;
 				}
+				mergeAt(n);
 			}
-			while (cmp.compare(a[--j], pivot) >= 0) {
-				if (j == start) {
-					break;
+		}
+
+		private void mergeForceCollapse() {
+			while (stackSize > 1) {
+				int n = stackSize - 2;
+				if (n > 0 && runLen[n - 1] < runLen[n + 1]) {
+					n--;
 				}
+				mergeAt(n);
 			}
-			if (i >= j) {
-				break;
+		}
+
+		private void mergeAt(int i) {
+			int base1 = runBase[i];
+			int len1 = runLen[i];
+			int base2 = runBase[i + 1];
+			int len2 = runLen[i + 1];
+
+			runLen[i] = len1 + len2;
+			if (i == stackSize - 3) {
+				runBase[i + 1] = runBase[i + 2];
+				runLen[i + 1] = runLen[i + 2];
+			}
+			stackSize--;
+
+			// Elements of run1 not greater than the first of run2 are already in place
+			int k = upperBound(a[base2], a, base1, len1, cmp);
+			base1 += k;
+			len1 -= k;
+			if (len1 == 0) {
+				return;
+			}
+
+			// So are elements of run2 not less than the last of run1
+			len2 = lowerBound(a[base1 + len1 - 1], a, base2, len2, cmp);
+			if (len2 == 0) {
+				return;
+			}
+
+			if (tmp == null || tmp.length < len1) {
+				tmp = new Object[Math.max(len1, Math.min(a.length >>> 1, 256))];
+			}
+
+			System.arraycopy(a, base1, tmp, 0, len1);
+			int i1 = 0;
+			int i2 = base2;
+			int end2 = base2 + len2;
+			int dest = base1;
+
+			while (i1 < len1 && i2 < end2) {
+				// Take from run1 on ties to keep the sort stable
+				if (cmp.compare(a[i2], tmp[i1]) < 0) {
+					a[dest++] = a[i2++];
+				} else {
+					a[dest++] = tmp[i1++];
+				}
+			}
+
+			if (i1 < len1) {
+				System.arraycopy(tmp, i1, a, dest, len1 - i1);
 			}
-			swap(a, i, j);
 		}
+	}
 
-		swap(a, start, j);
-		return j;
+	private Sorting() {
 	}
 
-	/*
-	Return the index of the median of three elements in the specified array range -- the
-	first, the last, and the one in the middle.
-	*/
+	public void insertionSort(Object[] a, Comparator<Object> cmp) {
+		binaryInsertionSort(a, 0, a.length, 0, cmp);
+	}
+
+	/**
+	 * Stable sort of the whole array. Inconsistent comparators produce an
+	 * unspecified order but never an exception.
+	 */
+	public void stableSort(Object[] a, Comparator<Object> cmp) {
+		stableSort(a, 0, a.length, cmp);
+	}
+
+	/**
+	 * Stable sort of a[lo, hi).
+	 */
+	public void stableSort(Object[] a, int lo, int hi, Comparator<Object> cmp) {
+		int remaining = hi - lo;
+		if (remaining < 2) {
+			return;
+		}
+
+		if (remaining < MIN_MERGE) {
+			int run = countRunAndMakeAscending(a, lo, hi, cmp);
+			binaryInsertionSort(a, lo, hi, lo + run, cmp);
+			return;
+		}
+
+		MergeState state = new MergeState(a, cmp);
+		int minRun = minRunLength(remaining);
+
+		do {
+			int run = countRunAndMakeAscending(a, lo, hi, cmp);
+			if (run < minRun) {
+				int force = Math.min(remaining, minRun);
+				binaryInsertionSort(a, lo, lo + force, lo + run, cmp);
+				run = force;
+			}
+			state.pushRun(lo, run);
+			state.mergeCollapse();
+			lo += run;
+			remaining -= run;
+		} while (remaining != 0);
+
+		state.mergeForceCollapse();
+	}
+
+	/**
+	 * @deprecated Use {@link #stableSort(Object[], Comparator)}, which this now calls.
+	 */
+	@Deprecated
+	public void hybridSort(Object[] a, Comparator<Object> cmp) {
+		stableSort(a, cmp);
+	}
+
+	/**
+	 * Returns the index of the median of the first, the last and the middle element of a[start, end].
+	 *
+	 * @deprecated Only used by the old quicksort, {@link #stableSort(Object[], Comparator)} doesn't pick pivots.
+	 */
+	@Deprecated
 	public int median(final Object[] a, int start, int end, Comparator<Object> cmp) {
 		final int m = start + ((end - start) / 2);
 		int smallest = start;
@@ -127,4 +318,107 @@ public final class Sorting {
 		}
 		return (cmp.compare(a[start], a[m]) < 0) ? start : m;
 	}
+
+	/**
+	 * Sorts a copy of array elements the way Array.prototype.sort does.
+	 * <p>
+	 * Undefined values and holes ({@link Scriptable#NOT_FOUND}) are moved to the end
+	 * without consulting the comparator. The default comparator converts every element
+	 * to a string once instead of on every comparison, and script comparators of the
+	 * form <code>(a, b) =&gt; a - b</code> or <code>(a, b) =&gt; a.p - b.p</code> (or
+	 * reversed) are not called at all: their numeric keys are computed once per element.
+	 */
+	public void sortArray(Object[] a, Comparator<Object> comparator) {
+		int n = a.length;
+		Comparator<Object> cmp = comparator;
+
+		if (comparator instanceof ArrayLikeAbstractOperations.ElementComparator ec) {
+			n = moveUndefinedToEnd(a);
+			cmp = ec.child();
+		}
+
+		if (n < 2) {
+			return;
+		}
+
+		if (cmp instanceof ArrayLikeAbstractOperations.StringLikeComparator s) {
+			Keyed[] keyed = new Keyed[n];
+			for (int i = 0; i < n; i++) {
+				keyed[i] = new Keyed(a[i], ScriptRuntime.toString(s.cx(), a[i]), 0D);
+			}
+			sortKeyed(a, keyed, STRING_KEY);
+		} else if (!(cmp instanceof ArrayLikeAbstractOperations.FunctionComparator f) || f.numericSortKey == null || !sortByNumericKey(a, n, f)) {
+			stableSort(a, 0, n, cmp);
+		}
+	}
+
+	/*
+	Values first, then undefined, then holes, keeping the order of values. Returns the number of values.
+	*/
+	private static int moveUndefinedToEnd(Object[] a) {
+		int n = 0;
+		int undefined = 0;
+
+		for (int i = 0; i < a.length; i++) {
+			Object v = a[i];
+			if (v == Undefined.INSTANCE) {
+				undefined++;
+			} else if (v != Scriptable.NOT_FOUND) {
+				a[n++] = v;
+			}
+		}
+
+		Arrays.fill(a, n, n + undefined, Undefined.INSTANCE);
+		Arrays.fill(a, n + undefined, a.length, Scriptable.NOT_FOUND);
+		return n;
+	}
+
+	/*
+	Returns false without modifying a if the keys can't reproduce what the comparator would do.
+	*/
+	private boolean sortByNumericKey(Object[] a, int n, ArrayLikeAbstractOperations.FunctionComparator f) {
+		ArrayLikeAbstractOperations.NumericSortKey sortKey = f.numericSortKey;
+		double[] keys = new double[n];
+		boolean plainNumbers = sortKey.property() == null;
+
+		for (int i = 0; i < n; i++) {
+			Object v = a[i];
+			if (v == null && !plainNumbers) {
+				// Let the comparator throw the usual TypeError
+				return false;
+			}
+			double d = f.sortKey(v);
+			if (Double.isNaN(d)) {
+				// a - b is NaN, which the sort treats as equal to everything
+				return false;
+			}
+			keys[i] = d;
+			if (plainNumbers && (!(v instanceof Number) || d == 0D && 1D / d < 0D)) {
+				// Only the values themselves can be sorted without keeping track of equal elements
+				plainNumbers = false;
+			}
+		}
+
+		if (plainNumbers) {
+			Arrays.sort(keys);
+			for (int i = 0; i < n; i++) {
+				a[i] = ScriptRuntime.wrapNumber(keys[sortKey.descending() ? n - 1 - i : i]);
+			}
+			return true;
+		}
+
+		Keyed[] keyed = new Keyed[n];
+		for (int i = 0; i < n; i++) {
+			keyed[i] = new Keyed(a[i], null, keys[i]);
+		}
+		sortKeyed(a, keyed, sortKey.descending() ? (x, y) -> NUMBER_KEY.compare(y, x) : NUMBER_KEY);
+		return true;
+	}
+
+	private void sortKeyed(Object[] a, Keyed[] keyed, Comparator<Object> cmp) {
+		stableSort(keyed, 0, keyed.length, cmp);
+		for (int i = 0; i < keyed.length; i++) {
+			a[i] = keyed[i].value;
+		}
+	}
 }
@@ -0,0 +1,114 @@
+package dev.latvian.mods.rhino;
+
+import dev.latvian.mods.rhino.ScriptableObject.Slot;
+import dev.latvian.mods.rhino.ScriptableObject.SlotAccess;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * SlotMapContainer that can be used by several threads at once, see {@link ScriptableObject#makeThreadSafe()}.
+ * <p>
+ * Lookups take the read lock, which readers share, so objects that are mostly read, like a shared library scope,
+ * don't make threads wait for each other. They aren't optimistic reads, as walking the slot chains while a writer
+ * relinks them could loop forever before the stamp is validated. Adding and removing properties takes the write
+ * lock. Iterating requires the read lock from {@link #readLock()}.
+ */
+class ThreadSafeSlotMapContainer extends SlotMapContainer {
+	private final StampedLock lock = new StampedLock();
+
+	ThreadSafeSlotMapContainer(SlotMap map) {
+		super(map);
+	}
+
+	@Override
+	public int size() {
+		// Only reads a count field, unlike lookups this can't be caught in a half-updated chain
+		long stamp = lock.tryOptimisticRead();
+		int size = map.size();
+
+		if (lock.validate(stamp)) {
+			return size;
+		}
+
+		stamp = lock.readLock();
+
+		try {
+			return map.size();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public int dirtySize() {
+		// Only called with the read lock held
+		return map.size();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public Slot get(Object key, int index, SlotAccess accessType) {
+		if (accessType == SlotAccess.QUERY) {
+			return query(key, index);
+		}
+
+		long stamp = lock.writeLock();
+
+		try {
+			checkMapSize();
+			return getAndUpdateShape(key, index, accessType);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public Slot query(Object key, int index) {
+		long stamp = lock.readLock();
+
+		try {
+			return map.query(key, index);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	@Override
+	public void addSlot(Slot newSlot) {
+		long stamp = lock.writeLock();
+
+		try {
+			checkMapSize();
+			shape++;
+			map.addSlot(newSlot);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public void remove(Object key, int index, Context cx) {
+		long stamp = lock.writeLock();
+
+		try {
+			shape++;
+			map.remove(key, index, cx);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	@Override
+	public long readLock() {
+		return lock.readLock();
+	}
+
+	@Override
+	public void unlockRead(long stamp) {
+		lock.unlockRead(stamp);
+	}
+}
@@ -25,9 +25,8 @@ public class WrappedException extends EvaluatorException {
 	 * @see Context#throwAsScriptRuntimeEx(Throwable, Context)
 	 */
 	public WrappedException(Context cx, Throwable exception) {
-		super(cx, "Wrapped " + exception);
+		super(cx, "Wrapped " + exception, exception);
 		this.exception = exception;
-		this.initCause(exception);
 
 		int[] linep = {0};
 		String sourceName = Context.getSourcePositionFromStack(cx, linep);
@@ -0,0 +1,50 @@
+package dev.latvian.mods.rhino;
+
+import com.google.common.collect.MapMaker;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Wrappers created for Java objects in one top-level scope, see {@link ContextFactory#cacheWrappers(Class)}.
+ * <p>
+ * Keys are compared by identity, as wrappers have to be reused for the same object and not for an equal one.
+ * Both keys and values are weak, since every wrapper references the object it wraps.
+ */
+final class WrapperCache {
+	private static final Object KEY = "WRAPPER_CACHE";
+
+	@Nullable
+	static WrapperCache get(Scriptable scope, boolean create) {
+		if (!(ScriptableObject.getTopLevelScope(scope) instanceof ScriptableObject topLevel)) {
+			return null;
+		}
+
+		var cache = (WrapperCache) topLevel.getAssociatedValue(KEY);
+
+		if (cache == null && create) {
+			cache = (WrapperCache) topLevel.associateValue(KEY, new WrapperCache());
+		}
+
+		return cache;
+	}
+
+	private volatile Map<Object, NativeJavaObject> wrappers = createMap();
+
+	private static Map<Object, NativeJavaObject> createMap() {
+		return new MapMaker().weakKeys().weakValues().makeMap();
+	}
+
+	@Nullable
+	NativeJavaObject get(Object javaObject) {
+		return wrappers.get(javaObject);
+	}
+
+	void put(Object javaObject, NativeJavaObject wrapper) {
+		wrappers.put(javaObject, wrapper);
+	}
+
+	void clear() {
+		wrappers = createMap();
+	}
+}
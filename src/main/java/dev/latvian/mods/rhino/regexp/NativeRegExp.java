@@ -1773,7 +1773,7 @@ public class NativeRegExp extends IdScriptableObject implements Function {
 			}
 		}
 
-		final boolean instructionCounting = cx.getInstructionObserverThreshold() != 0;
+		final boolean instructionCounting = cx.getInstructionObserverThreshold() != 0 || cx.getResourceQuota() != null;
 		for (; ; ) {
 			if (instructionCounting) {
 				ScriptRuntime.addInstructionCount(cx, 5);
@@ -65,12 +65,17 @@ public final class ArrayTypeInfo extends TypeInfoBase.OptionallyConsolidatable {
 		return component.getContainedComponentClasses();
 	}
 
+	@Override
+	protected boolean findVariables() {
+		return hasVariables(component);
+	}
+
 	@Override
 	protected TypeInfo consolidateImpl(@NotNull Map<VariableTypeInfo, TypeInfo> mapping) {
 		var consolidatedComponent = component.consolidate(mapping);
 		if (consolidatedComponent == component) {
 			return this;
 		}
-		return new ArrayTypeInfo(consolidatedComponent);
+		return consolidatedComponent.asArray();
 	}
 }
@@ -7,8 +7,21 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class ParameterizedTypeInfo extends TypeInfoBase.OptionallyConsolidatable {
+	static final Map<ParameterizedTypeInfo, ParameterizedTypeInfo> CACHE = new ConcurrentHashMap<>();
+
+	/**
+	 * Interned so that equal parameterized types are the same object, which lets the per-type caches
+	 * (array type, consolidated signatures) be shared and makes equality checks on hot paths an identity check.
+	 */
+	static ParameterizedTypeInfo of(TypeInfo rawType, TypeInfo[] params) {
+		var key = new ParameterizedTypeInfo(rawType, params);
+		var cached = CACHE.putIfAbsent(key, key);
+		return cached == null ? key : cached;
+	}
+
 	private final TypeInfo rawType;
 	private final TypeInfo[] params;
 	private int hashCode;
@@ -120,12 +133,23 @@ public final class ParameterizedTypeInfo extends TypeInfoBase.OptionallyConsolid
 		}
 	}
 
+	@Override
+	protected boolean findVariables() {
+		for (var param : params) {
+			if (hasVariables(param)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	@Override
 	protected TypeInfo consolidateImpl(@NotNull Map<VariableTypeInfo, TypeInfo> mapping) {
 		var consolidatedParams = TypeConsolidator.consolidateAll(this.params, mapping);
 		if (consolidatedParams == params) {
 			return this;
 		}
-		return new ParameterizedTypeInfo(this.rawType, consolidatedParams);
+		return of(this.rawType, consolidatedParams);
 	}
 }
@@ -6,7 +6,11 @@ import dev.latvian.mods.rhino.NativeArray;
 import dev.latvian.mods.rhino.NativeJavaList;
 import dev.latvian.mods.rhino.NativeJavaObject;
 import dev.latvian.mods.rhino.NativeMap;
+import dev.latvian.mods.rhino.NativeObject;
 import dev.latvian.mods.rhino.RhinoException;
+import dev.latvian.mods.rhino.Scriptable;
+import dev.latvian.mods.rhino.Undefined;
+import dev.latvian.mods.rhino.Wrapper;
 import dev.latvian.mods.rhino.util.RemapForJS;
 import dev.latvian.mods.rhino.util.wrap.TypeWrapperFactory;
 
@@ -48,7 +52,7 @@ public class RecordTypeInfo extends ClassTypeInfo implements TypeWrapperFactory<
 
 	static final Map<Class<?>, RecordTypeInfo> CACHE = new IdentityHashMap<>();
 
-	private Data data;
+	private volatile Data data;
 	private JSObjectTypeInfo objectTypeInfo;
 	private JSFixedArrayTypeInfo arrayTypeInfo;
 
@@ -56,7 +60,10 @@ public class RecordTypeInfo extends ClassTypeInfo implements TypeWrapperFactory<
 		super(type);
 	}
 
-	public synchronized Data getData() {
+	public Data getData() {
+		var data = this.data;
+
+		// Data is immutable, so threads racing to create it can each use their own
 		if (data == null) {
 			var rc = asClass().getRecordComponents();
 			var components = new Component[rc.length];
@@ -78,6 +85,7 @@ public class RecordTypeInfo extends ClassTypeInfo implements TypeWrapperFactory<
 			}
 
 			data = new Data(components, Map.copyOf(componentMap), defaultArguments);
+			this.data = data;
 		}
 
 		return data;
@@ -127,14 +135,14 @@ public class RecordTypeInfo extends ClassTypeInfo implements TypeWrapperFactory<
 	}
 
 	private Object createInstance0(Context cx, Object original, Object[] args) {
-		var constructor = cx.factory.getRecordConstructor(asClass());
+		var factory = cx.factory.getRecordFactory(asClass());
 
-		if (constructor == null) {
+		if (factory == null) {
 			throw Context.reportRuntimeError("Unable to find record '" + asClass().getName() + "' constructor", cx);
 		}
 
 		try {
-			return constructor.invokeWithArguments(args);
+			return (Object) factory.invokeExact(args);
 		} catch (RhinoException ex) {
 			return cx.reportConversionError(original, this);
 		} catch (Throwable ex) {
@@ -142,41 +150,60 @@ public class RecordTypeInfo extends ClassTypeInfo implements TypeWrapperFactory<
 		}
 	}
 
+	private Object[] createArgs(Context cx) {
+		var defaultRecordProperties = cx.factory.getDefaultRecordProperties(asClass());
+		return (defaultRecordProperties == null ? getData().defaultArguments : defaultRecordProperties).clone();
+	}
+
+	private static void setArg(Context cx, Object[] args, Component c, Object value) {
+		if (args[c.index] instanceof Optional) {
+			args[c.index] = Optional.ofNullable(cx.jsToJava(value, c.type.param(0)));
+		} else {
+			args[c.index] = cx.jsToJava(value, c.type);
+		}
+	}
+
 	public Object createInstance(Context cx, Map<?, ?> map) {
 		var data = getData();
-		var defaultRecordProperties = cx.factory.getDefaultRecordProperties(asClass());
-		var args0 = defaultRecordProperties == null ? data.defaultArguments : defaultRecordProperties;
-		var args = args0.clone();
+		var args = createArgs(cx);
 
 		for (var entry : map.entrySet()) {
 			var c = data.componentMap.get(String.valueOf(entry.getKey()));
 
 			if (c != null) {
-				if (args[c.index] instanceof Optional) {
-					args[c.index] = Optional.ofNullable(cx.jsToJava(entry.getValue(), c.type.param(0)));
-				} else {
-					args[c.index] = cx.jsToJava(entry.getValue(), c.type);
-				}
+				setArg(cx, args, c, entry.getValue());
 			}
 		}
 
 		return createInstance0(cx, map, args);
 	}
 
+	/**
+	 * Looks up each component in the object instead of going through all of its properties.
+	 */
+	public Object createInstanceFromObject(Context cx, NativeObject object) {
+		var args = createArgs(cx);
+
+		for (var c : getData().components) {
+			var value = object.get(cx, c.name, object);
+
+			// Undefined becomes null, as it did when records were read through the Map interface of the object
+			if (value != Scriptable.NOT_FOUND) {
+				setArg(cx, args, c, value == Undefined.INSTANCE ? null : Wrapper.unwrapped(value));
+			}
+		}
+
+		return createInstance0(cx, object, args);
+	}
+
 	public Object createInstance(Context cx, Object... objects) {
 		var data = getData();
-		var defaultRecordProperties = cx.factory.getDefaultRecordProperties(asClass());
-		var args0 = defaultRecordProperties == null ? data.defaultArguments : defaultRecordProperties;
-		var args = args0.clone();
+		var args = createArgs(cx);
 
-		int alen = Math.min(args0.length, objects.length);
+		int alen = Math.min(args.length, objects.length);
 
 		for (int i = 0; i < alen; i++) {
-			if (args[i] instanceof Optional) {
-				args[i] = Optional.ofNullable(cx.jsToJava(objects[i], data.components[i].type.param(0)));
-			} else {
-				args[i] = cx.jsToJava(objects[i], data.components[i].type);
-			}
+			setArg(cx, args, data.components[i], objects[i]);
 		}
 
 		return createInstance0(cx, args, args);
@@ -190,6 +217,8 @@ public class RecordTypeInfo extends ClassTypeInfo implements TypeWrapperFactory<
 		} else if (from instanceof NativeArray || from instanceof NativeJavaList) {
 			var arr = (Object[]) cx.arrayOf(from, TypeInfo.NONE);
 			return createInstance(cx, arr);
+		} else if (from instanceof NativeObject object) {
+			return createInstanceFromObject(cx, object);
 		} else if (from instanceof Map<?, ?> || from instanceof NativeJavaObject || from instanceof NativeMap) {
 			var map = (Map) cx.mapOf(from, TypeInfo.STRING, TypeInfo.NONE);
 			return createInstance(cx, map);
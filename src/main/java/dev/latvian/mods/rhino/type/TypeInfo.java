@@ -138,7 +138,17 @@ public interface TypeInfo {
 	static TypeInfo of(Type type) {
 		return switch (type) {
 			case Class<?> clz -> of(clz);
-			case ParameterizedType paramType -> of(paramType.getRawType()).withParams(ofArray(paramType.getActualTypeArguments()));
+			case ParameterizedType paramType -> {
+				// Reflection hands out a new ParameterizedType for every call, so this saves walking the same tree again
+				var cached = TypeUtils.PARAMETERIZED_CACHE.get(paramType);
+
+				if (cached == null) {
+					cached = of(paramType.getRawType()).withParams(ofArray(paramType.getActualTypeArguments()));
+					TypeUtils.PARAMETERIZED_CACHE.putIfAbsent(paramType, cached);
+				}
+
+				yield cached;
+			}
 			case GenericArrayType arrType -> of(arrType.getGenericComponentType()).asArray();
 			case TypeVariable<?> variable -> of(variable);
 			case WildcardType wildcard -> {
@@ -211,7 +221,7 @@ public interface TypeInfo {
 			return this;
 		}
 
-		return new ParameterizedTypeInfo(this, params);
+		return ParameterizedTypeInfo.of(this, params);
 	}
 
 	default boolean isFunctionalInterface() {
@@ -32,21 +32,33 @@ public abstract class TypeInfoBase implements TypeInfo {
 	}
 
 	public static abstract class OptionallyConsolidatable extends TypeInfoBase {
-		private Boolean consolidatable = null;
+		// 0 = not checked yet, 1 = contains no type variables, 2 = contains type variables
+		private byte variables;
+
+		static boolean hasVariables(TypeInfo type) {
+			return type instanceof VariableTypeInfo || type instanceof OptionallyConsolidatable o && o.hasVariables();
+		}
+
+		/**
+		 * Types without type variables consolidate to themselves under any mapping, so only those with variables
+		 * have to be walked. Whether a type has any can't depend on the mapping, so it's safe to remember even though
+		 * interned types are shared by every mapping.
+		 */
+		public boolean hasVariables() {
+			if (variables == 0) {
+				variables = (byte) (findVariables() ? 2 : 1);
+			}
+
+			return variables == 2;
+		}
 
 		@Override
 		public @NotNull TypeInfo consolidate(@NotNull Map<VariableTypeInfo, TypeInfo> mapping) {
-			if (consolidatable == null) {
-				var consolidated = this.consolidateImpl(mapping);
-				consolidatable = consolidated == this;
-				return consolidated;
-			}
-			if (consolidatable) {
-				return this.consolidateImpl(mapping);
-			}
-			return this;
+			return mapping.isEmpty() || !hasVariables() ? this : consolidateImpl(mapping);
 		}
 
+		protected abstract boolean findVariables();
+
 		protected abstract TypeInfo consolidateImpl(@NotNull Map<VariableTypeInfo, TypeInfo> mapping);
 	}
 }
@@ -8,9 +8,11 @@ import java.lang.reflect.TypeVariable;
 import java.lang.reflect.WildcardType;
 import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TypeUtils {
 	static final Map<Class<?>, TypeInfo> IMMUTABLE_CACHE = new IdentityHashMap<>();
+	static final Map<ParameterizedType, TypeInfo> PARAMETERIZED_CACHE = new ConcurrentHashMap<>();
 
 	private static void cacheType(TypeInfo... info) {
 		for (var i : info) {
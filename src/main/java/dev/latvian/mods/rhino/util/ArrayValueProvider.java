@@ -3,15 +3,19 @@ package dev.latvian.mods.rhino.util;
 import dev.latvian.mods.rhino.Context;
 import dev.latvian.mods.rhino.EvaluatorException;
 import dev.latvian.mods.rhino.NativeArray;
+import dev.latvian.mods.rhino.Scriptable;
+import dev.latvian.mods.rhino.Undefined;
 import dev.latvian.mods.rhino.type.TypeInfo;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.IntFunction;
 
 public interface ArrayValueProvider {
 	ArrayValueProvider EMPTY = new ArrayValueProvider() {
@@ -37,6 +41,23 @@ public interface ArrayValueProvider {
 
 	Object getErrorSource(Context cx);
 
+	/**
+	 * All values without any conversion.
+	 */
+	default Object[] getArrayValues(Context cx) {
+		return valuesOf(getLength(cx), i -> getArrayValue(cx, i));
+	}
+
+	private static Object[] valuesOf(int len, IntFunction<Object> getter) {
+		var values = new Object[len];
+
+		for (int i = 0; i < len; i++) {
+			values[i] = getter.apply(i);
+		}
+
+		return values;
+	}
+
 	default Object createArray(Context cx, TypeInfo target) {
 		int len = getLength(cx);
 		var arr = target.newArray(len);
@@ -133,9 +154,15 @@ public interface ArrayValueProvider {
 			return (int) array.getLength();
 		}
 
+		@Override
+		public Object createArray(Context cx, TypeInfo target) {
+			return array.toJavaArray(cx, target);
+		}
+
 		@Override
 		public Object getArrayValue(Context cx, int index) {
-			return array.get(cx, index, array);
+			var value = array.get(cx, index, array);
+			return value == Scriptable.NOT_FOUND ? Undefined.INSTANCE : value;
 		}
 
 		@Override
@@ -150,6 +177,33 @@ public interface ArrayValueProvider {
 			return length;
 		}
 
+		@Override
+		public Object createArray(Context cx, TypeInfo target) {
+			var type = target.asClass();
+
+			// Primitive arrays of the same type convert to a plain copy, unless a type wrapper changes the elements
+			if (array.getClass().getComponentType() == type && !cx.factory.getTypeWrappers().hasWrapper(type)) {
+				var result = target.newArray(length);
+				System.arraycopy(array, 0, result, 0, length);
+				return result;
+			}
+
+			return ArrayValueProvider.super.createArray(cx, target);
+		}
+
+		@Override
+		public Object[] getArrayValues(Context cx) {
+			// Copy the common number and string arrays with a typed loop instead of Array.get
+			return switch (array) {
+				case int[] arr -> ArrayValueProvider.valuesOf(length, i -> arr[i]);
+				case long[] arr -> ArrayValueProvider.valuesOf(length, i -> arr[i]);
+				case float[] arr -> ArrayValueProvider.valuesOf(length, i -> arr[i]);
+				case double[] arr -> ArrayValueProvider.valuesOf(length, i -> arr[i]);
+				case String[] arr -> Arrays.copyOf(arr, length, Object[].class);
+				default -> ArrayValueProvider.super.getArrayValues(cx);
+			};
+		}
+
 		@Override
 		public Object getArrayValue(Context cx, int index) {
 			return Array.get(array, index);
@@ -167,6 +221,18 @@ public interface ArrayValueProvider {
 			return array.length;
 		}
 
+		@Override
+		public Object createArray(Context cx, TypeInfo target) {
+			// Strings are never converted to strings, so unless a type wrapper changes them there is nothing to do but copy
+			if (array instanceof String[] && target.asClass() == String.class && !cx.factory.getTypeWrappers().hasWrapper(String.class)) {
+				var result = new String[array.length];
+				System.arraycopy(array, 0, result, 0, array.length);
+				return result;
+			}
+
+			return ArrayValueProvider.super.createArray(cx, target);
+		}
+
 		@Override
 		public Object getArrayValue(Context cx, int index) {
 			return array[index];
@@ -3,24 +3,66 @@ package dev.latvian.mods.rhino.util.wrap;
 import dev.latvian.mods.rhino.type.TypeInfo;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.IdentityHashMap;
+import java.util.AbstractMap;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 /**
+ * Registry of {@link TypeWrapper}s by target class.
+ * <p>
+ * Registration is copy-on-write: every lookup reads an immutable snapshot without locking, so the registry
+ * can be shared by contexts on any thread. Once setup is done it can be {@link #freeze() frozen}, after which
+ * registering throws.
+ *
  * @author LatvianModder
  */
 public class TypeWrappers {
-	public final Map<Class<?>, TypeWrapper<?>> wrappers = new IdentityHashMap<>();
+	private volatile Map<Class<?>, TypeWrapper<?>> snapshot = Map.of();
+	private volatile boolean frozen;
 
-	public <T> void register(Class<T> target, TypeWrapperValidator validator, TypeWrapperFactory<T> factory) {
-		if (target == null || target == Object.class) {
+	/**
+	 * Read-only view of the registered wrappers that always reflects the latest snapshot.
+	 *
+	 * @deprecated Use {@link #getWrappers()}, {@link #hasWrapper(Class)} or {@link #getWrapper(Class)}. This map can't be
+	 * modified anymore, register wrappers with {@link #register(Class, TypeWrapperValidator, TypeWrapperFactory)}.
+	 */
+	@Deprecated
+	public final Map<Class<?>, TypeWrapper<?>> wrappers = new AbstractMap<>() {
+		@Override
+		public TypeWrapper<?> get(Object key) {
+			return key == null ? null : snapshot.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key != null && snapshot.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return snapshot.size();
+		}
+
+		@Override
+		public Set<Entry<Class<?>, TypeWrapper<?>>> entrySet() {
+			return snapshot.entrySet();
+		}
+	};
+
+	public synchronized <T> void register(Class<T> target, TypeWrapperValidator validator, TypeWrapperFactory<T> factory) {
+		if (frozen) {
+			throw new IllegalStateException("Type wrappers are frozen, can't register " + (target == null ? "null" : target.getName()));
+		} else if (target == null || target == Object.class) {
 			throw new IllegalArgumentException("target can't be Object.class!");
 		} else if (target.isArray()) {
 			throw new IllegalArgumentException("target can't be an array!");
-		} else if (wrappers.containsKey(target)) {
+		} else if (snapshot.containsKey(target)) {
 			throw new IllegalArgumentException("Wrapper for class " + target.getName() + " already exists!");
 		} else {
-			wrappers.put(target, new TypeWrapper<>(target, validator, factory));
+			var map = new HashMap<Class<?>, TypeWrapper<?>>(snapshot);
+			map.put(target, new TypeWrapper<>(target, validator, factory));
+			snapshot = Map.copyOf(map);
 		}
 	}
 
@@ -36,24 +78,64 @@ public class TypeWrappers {
 		register(target, TypeWrapperValidator.ALWAYS_VALID, factory);
 	}
 
+	/**
+	 * Stops any further registration. Lookups aren't affected.
+	 */
+	public void freeze() {
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	public boolean isEmpty() {
+		return snapshot.isEmpty();
+	}
+
+	/**
+	 * Read-only view of the registered wrappers.
+	 */
+	public Map<Class<?>, TypeWrapper<?>> getWrappers() {
+		return snapshot;
+	}
+
+	/**
+	 * Whether a wrapper is registered for this exact class, regardless of its validator.
+	 */
+	public boolean hasWrapper(Class<?> target) {
+		return snapshot.containsKey(target);
+	}
+
+	@Nullable
+	public TypeWrapper<?> getWrapper(Class<?> target) {
+		return snapshot.get(target);
+	}
+
 	public boolean hasWrapper(Object from, TypeInfo target) {
 		if (target instanceof TypeWrapperFactory<?>) {
 			return true;
 		}
 
-		var wrapper = wrappers.get(target.asClass());
+		var map = snapshot;
+
+		if (map.isEmpty()) {
+			return false;
+		}
+
+		var wrapper = map.get(target.asClass());
 		return wrapper != null && wrapper.validator().isValid(from, target);
 	}
 
 	@Nullable
 	public TypeWrapperFactory<?> getWrapperFactory(@Nullable Object from, TypeInfo target) {
-		if (target == TypeInfo.OBJECT) {
+		var map = snapshot;
+
+		if (map.isEmpty() || target == TypeInfo.OBJECT) {
 			return null;
 		}
 
-		var cl = target.asClass();
-
-		var wrapper = wrappers.get(cl);
+		var wrapper = map.get(target.asClass());
 
 		if (wrapper != null && wrapper.validator().isValid(from, target)) {
 			return wrapper.factory();
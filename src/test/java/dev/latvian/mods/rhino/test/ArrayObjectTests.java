@@ -1,5 +1,8 @@
 package dev.latvian.mods.rhino.test;
 
+import dev.latvian.mods.rhino.ScriptableObject;
+import dev.latvian.mods.rhino.type.TypeInfo;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -404,4 +407,94 @@ public class ArrayObjectTests {
 			""");
 	}
 
+	@Test
+	public void sortStable() {
+		TEST.test("sortStable", """
+			const items = [];
+			for (let i = 0; i < 40; i++) {
+				items.push({ score: i % 4, id: i });
+			}
+			let reads = 0;
+			const counted = items.map(o => ({ get score() { reads++; return o.score; }, id: o.id }));
+			const byScore = counted.sort((a, b) => b.score - a.score);
+			console.info(reads);
+			console.info(byScore.slice(0, 4).map(o => o.id).join(','));
+			let calls = 0;
+			const generic = items.slice().sort((a, b) => {
+				calls++;
+				return a.score - b.score;
+			});
+			console.info(calls < 400);
+			console.info(generic.slice(0, 4).map(o => o.id).join(','));
+			console.info([3, 1, undefined, 2, -0, 0].sort((a, b) => a - b).map(v => v === 0 ? 1 / v : v).join(','));
+			console.info(['b', 10, 'a', 9, 1].sort().join(','));
+			""", """
+			40
+			3,7,11,15
+			true
+			0,4,8,12
+			-Infinity,Infinity,1,2,3,
+			1,10,9,a,b
+			""");
+	}
+
+	@Test
+	public void indexedAccess() {
+		TEST.test("indexedAccess", """
+			const a = [1, 2, 3, , 5];
+			let sum = 0;
+			for (let i = 0; i < a.length; i++) {
+				a[i] = (a[i] || 0) * 2;
+				sum += a[i];
+			}
+			console.info(sum);
+			Array.prototype[1] = 'proto';
+			const b = [0, , 2];
+			console.info(b[1] + ',' + b[1.5] + ',' + b[-0] + ',' + b[5]);
+			delete Array.prototype[1];
+			const frozen = Object.freeze([1, 2]);
+			frozen[0] = 5;
+			console.info(frozen[0]);
+			""", """
+			22
+			proto,undefined,0,undefined
+			1
+			""");
+	}
+
+	@Test
+	public void primitiveJavaArrays() {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		var ints = new int[]{1, 2, 3};
+		var doubles = new double[]{0.5, 1.5};
+		var bytes = new byte[]{-1, 0};
+		var chars = new char[]{'a'};
+		ScriptableObject.putProperty(scope, "ints", cx.wrap(scope, ints, TypeInfo.PRIMITIVE_INT_ARRAY), cx);
+		ScriptableObject.putProperty(scope, "doubles", cx.wrap(scope, doubles, TypeInfo.PRIMITIVE_DOUBLE_ARRAY), cx);
+		ScriptableObject.putProperty(scope, "bytes", cx.wrap(scope, bytes, TypeInfo.PRIMITIVE_BYTE_ARRAY), cx);
+		ScriptableObject.putProperty(scope, "chars", cx.wrap(scope, chars, TypeInfo.PRIMITIVE_CHARACTER_ARRAY), cx);
+
+		var result = cx.evaluateString(scope, """
+			let sum = 0;
+			for (let i = 0; i < ints.length; i++) {
+				ints[i] = ints[i] * 2;
+				sum += ints[i];
+			}
+			for (let i = 0; i < doubles.length; i++) {
+				doubles[i] += i;
+			}
+			bytes[1] = 127;
+			bytes[0] = bytes[0] - 1;
+			chars[0] = 'b';
+			[sum, doubles[1], typeof doubles[0], bytes[0], chars[0], ints[5]].join()
+			""", "arrays/primitiveJavaArrays", 1, null);
+
+		Assertions.assertEquals("12,2.5,number,-2,98,", result);
+		Assertions.assertArrayEquals(new int[]{2, 4, 6}, ints);
+		Assertions.assertArrayEquals(new double[]{0.5, 2.5}, doubles);
+		Assertions.assertArrayEquals(new byte[]{-2, 127}, bytes);
+		Assertions.assertEquals('b', chars[0]);
+		Assertions.assertThrows(RuntimeException.class, () -> cx.evaluateString(scope, "bytes[0] = 300", "arrays/primitiveJavaArrays", 1, null));
+	}
 }
@@ -1,7 +1,14 @@
 package dev.latvian.mods.rhino.test;
 
+import dev.latvian.mods.rhino.NativeArray;
+import dev.latvian.mods.rhino.NativeObject;
+import dev.latvian.mods.rhino.ScriptableObject;
+import dev.latvian.mods.rhino.type.TypeInfo;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -58,4 +65,131 @@ public class CollectionTests {
 			Infinity
 			""");
 	}
+
+	@Test
+	public void iterateWhileModifying() {
+		TEST.test("iterateWhileModifying", """
+			const m = new Map();
+			for (let i = 0; i < 100; i++) {
+				m.set(i, 'v' + i);
+			}
+			const it = m.keys();
+			console.info(it.next().value + ',' + it.next().value);
+			for (let i = 0; i < 95; i++) {
+				m.delete(i);
+			}
+			m.set(200, 'x');
+			m.set(97, 'y');
+			const rest = [];
+			for (let k of it) {
+				rest.push(k);
+			}
+			console.info(rest.join(','));
+			console.info(m.size + ' ' + m.get(97) + ' ' + m.get(200) + ' ' + m.has(3));
+			const s = new Set([1, 2, 3]);
+			const values = s.values();
+			s.clear();
+			s.add('a');
+			console.info(Array.from(values).join(','));
+			const e = new Set();
+			const ev = e.values();
+			e.add(NaN);
+			e.add(NaN);
+			e.add(-0);
+			console.info(e.size + ' ' + ev.next().value + ' ' + e.has(0));
+			""", """
+			0,1
+			95,96,97,98,99,200
+			6 y x false
+			a
+			2 NaN true
+			""");
+	}
+
+	@Test
+	public void convertedCollectionViews() {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		var array = (NativeArray) cx.evaluateString(scope, "var a = [1, 2, 3]; a", "collections/convertedCollectionViews", 1, null);
+		var list = (List<?>) cx.listViewOf(array, TypeInfo.STRING);
+
+		Assertions.assertEquals("2", list.get(1));
+		Assertions.assertSame(list.get(1), list.get(1), "Converted elements should be cached");
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> ((List<Object>) list).add("4"));
+
+		cx.evaluateString(scope, "a[1] = 5; a.push(4)", "collections/convertedCollectionViews", 1, null);
+		Assertions.assertEquals(List.of("1", "5", "3", "4"), list);
+
+		var copy = (List<Object>) cx.listOf(array, TypeInfo.STRING);
+		copy.add("6");
+		Assertions.assertEquals(5, copy.size(), "Lists should be mutable copies unless views are enabled");
+		Assertions.assertEquals(4, list.size());
+
+		var object = (NativeObject) cx.evaluateString(scope, "var o = {x: 1, 0: 2}; o", "collections/convertedCollectionViews", 1, null);
+		var map = (Map<?, ?>) cx.mapViewOf(object, TypeInfo.STRING, TypeInfo.STRING);
+
+		Assertions.assertEquals("1", map.get("x"));
+		Assertions.assertEquals("2", map.get("0"));
+		Assertions.assertNull(map.get("toString"));
+		Assertions.assertEquals(Map.of("0", "2", "x", "1"), map);
+
+		cx.evaluateString(scope, "o.y = 3", "collections/convertedCollectionViews", 1, null);
+		Assertions.assertEquals("3", map.get("y"));
+		Assertions.assertEquals(3, map.size());
+
+		var mapCopy = (Map<Object, Object>) cx.mapOf(object, TypeInfo.STRING, TypeInfo.STRING);
+		mapCopy.put("z", "4");
+		Assertions.assertFalse(map.containsKey("z"));
+
+		cx.factory.setCollectionViews(true);
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> ((List<Object>) cx.listOf(array, TypeInfo.STRING)).add("7"));
+	}
+
+	@Test
+	public void bulkArrayConversion() {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		var array = (NativeArray) cx.evaluateString(scope, "var a = [1, 2.0, 3.5 * 2, '4']; a[5] = -6; a", "collections/bulkArrayConversion", 1, null);
+
+		Assertions.assertArrayEquals(new String[]{"1", "2", "7", "4", "undefined", "-6"}, (String[]) cx.jsToJava(array, TypeInfo.STRING_ARRAY));
+		Assertions.assertThrows(RuntimeException.class, () -> cx.jsToJava(array, TypeInfo.PRIMITIVE_INT_ARRAY), "Holes can't be converted to numbers");
+
+		cx.evaluateString(scope, "a[4] = 5.5", "collections/bulkArrayConversion", 1, null);
+		Assertions.assertArrayEquals(new double[]{1D, 2D, 7D, 4D, 5.5D, -6D}, (double[]) cx.jsToJava(array, TypeInfo.PRIMITIVE_DOUBLE_ARRAY));
+		Assertions.assertArrayEquals(new float[]{1F, 2F, 7F, 4F, 5.5F, -6F}, (float[]) cx.jsToJava(array, TypeInfo.PRIMITIVE_FLOAT_ARRAY));
+		Assertions.assertArrayEquals(new int[]{1, 2, 7, 4, 5, -6}, (int[]) cx.jsToJava(array, TypeInfo.PRIMITIVE_INT_ARRAY));
+		Assertions.assertArrayEquals(new long[]{1L, 2L, 7L, 4L, 5L, -6L}, (long[]) cx.jsToJava(array, TypeInfo.PRIMITIVE_LONG_ARRAY));
+		Assertions.assertArrayEquals(new byte[]{1, 2, 7, 4, 5, -6}, (byte[]) cx.jsToJava(array, TypeInfo.PRIMITIVE_BYTE_ARRAY));
+		Assertions.assertThrows(RuntimeException.class, () -> cx.jsToJava(cx.evaluateString(scope, "[3e9]", "collections/bulkArrayConversion", 1, null), TypeInfo.PRIMITIVE_INT_ARRAY));
+
+		var ints = new int[]{3, 2, 1};
+		var copy = (int[]) cx.jsToJava(ints, TypeInfo.PRIMITIVE_INT_ARRAY);
+		Assertions.assertNotSame(ints, copy);
+		Assertions.assertArrayEquals(ints, copy);
+
+		var back = (NativeArray) cx.newArrayFromJava(scope, ints);
+		Assertions.assertEquals(List.of(3, 2, 1), back);
+		ScriptableObject.putProperty(scope, "b", back, cx);
+		Assertions.assertEquals("3,2,1,s", cx.evaluateString(scope, "b.push('s'); b.join()", "collections/bulkArrayConversion", 1, null));
+	}
+
+	@Test
+	public void wrappedArrayConversion() {
+		var factory = new TestContextFactory();
+		factory.getTypeWrappers().register(String.class, (cx, from, target) -> "w:" + from);
+		var cx = factory.enter();
+		var scope = cx.initStandardObjects();
+		var array = (NativeArray) cx.evaluateString(scope, "[1, 'a', true]", "collections/wrappedArrayConversion", 1, null);
+		var expected = new String[3];
+
+		for (int i = 0; i < expected.length; i++) {
+			expected[i] = (String) cx.jsToJava(array.get(i), TypeInfo.STRING);
+		}
+
+		Assertions.assertTrue(expected[0].startsWith("w:"), "Wrapper should apply to non-string elements");
+		Assertions.assertArrayEquals(expected, (String[]) cx.jsToJava(array, TypeInfo.STRING_ARRAY));
+
+		var strings = new String[]{"x", "y"};
+		Assertions.assertArrayEquals(new Object[]{cx.jsToJava("x", TypeInfo.STRING), cx.jsToJava("y", TypeInfo.STRING)}, (String[]) cx.jsToJava(strings, TypeInfo.STRING_ARRAY));
+	}
 }
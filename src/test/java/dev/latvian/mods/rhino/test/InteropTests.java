@@ -1,6 +1,7 @@
 package dev.latvian.mods.rhino.test;
 
 import dev.latvian.mods.rhino.JavaScriptException;
+import dev.latvian.mods.rhino.type.TypeInfo;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -21,6 +22,30 @@ public class InteropTests {
 		}
 	}
 
+	public static class Point {
+		public static int created = 0;
+		public double x;
+		public int y;
+		private final String name;
+
+		public Point(String name) {
+			this.name = name;
+			created++;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getSum(int extra) {
+			return (int) x + y + extra;
+		}
+
+		public Point self() {
+			return this;
+		}
+	}
+
 	public static class InterfaceTests {
 		public interface Defaulted {
 			default String someMethod() {
@@ -48,6 +73,7 @@ public class InteropTests {
 	public static final RhinoTest TEST = new RhinoTest("interopLayer").withScopeAction((cx, rootScope) -> {
 		cx.addToScope(rootScope, "TestUtil", TestUtil.class);
 		cx.addToScope(rootScope, "Interfaces", InterfaceTests.class);
+		cx.addToScope(rootScope, "Point", Point.class);
 	});
 
 
@@ -83,4 +109,55 @@ public class InteropTests {
 			overridden,js abstract
 			""");
 	}
+
+	@Test
+	public void memberAccess() {
+		TEST.test("memberAccess", """
+			const p = new Point('p')
+			p.x = 1.5
+			p.y = 2.0
+			p.x += 1
+			console.info(p.x + ',' + p.y + ',' + p.name + ',' + p.getSum(3))
+			Point.created = Point.created + 10
+			console.info(Point.created >= 11)
+			""", """
+			2.5,2,p,7
+			true
+			""");
+	}
+
+	@Test
+	public void cachedWrappers() {
+		var factory = new TestContextFactory();
+		factory.cacheWrappers(Point.class);
+		var cx = factory.enter();
+		var scope = cx.initStandardObjects();
+		var point = new Point("a");
+		cx.addToScope(scope, "a", point);
+		cx.addToScope(scope, "b", new Point("b"));
+
+		Assertions.assertSame(cx.wrap(scope, point, TypeInfo.NONE), cx.wrap(scope, point, TypeInfo.NONE));
+		Assertions.assertEquals(true, cx.evaluateString(scope, "a === a.self() && a !== b", "cachedWrappers", 1, null));
+
+		var wrapper = cx.wrap(scope, point, TypeInfo.NONE);
+		cx.clearWrapperCache(scope);
+		Assertions.assertNotSame(wrapper, cx.wrap(scope, point, TypeInfo.NONE));
+		Assertions.assertNotSame(cx.wrap(scope, factory, TypeInfo.NONE), cx.wrap(scope, factory, TypeInfo.NONE), "Only configured classes are cached");
+	}
+
+	@Test
+	public void frozenTypeWrappers() {
+		var wrappers = new TestContextFactory().getTypeWrappers();
+		wrappers.register(UUID.class, (cx, from, target) -> UUID.fromString(String.valueOf(from)));
+		var snapshot = wrappers.getWrappers();
+		wrappers.freeze();
+
+		Assertions.assertTrue(wrappers.hasWrapper(UUID.class));
+		Assertions.assertNotNull(wrappers.getWrapperFactory("00000000-0000-0000-0000-000000000001", TypeInfo.of(UUID.class)));
+		Assertions.assertNull(wrappers.getWrapperFactory("x", TypeInfo.STRING));
+		Assertions.assertThrows(IllegalStateException.class, () -> wrappers.register(Point.class, (cx, from, target) -> null));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> snapshot.clear());
+		Assertions.assertTrue(wrappers.wrappers.containsKey(UUID.class), "Deprecated map should follow registrations");
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> wrappers.wrappers.remove(UUID.class));
+	}
 }
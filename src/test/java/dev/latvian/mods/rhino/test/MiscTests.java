@@ -1,13 +1,27 @@
 package dev.latvian.mods.rhino.test;
 
+import dev.latvian.mods.rhino.Context;
+import dev.latvian.mods.rhino.ResourceQuota;
+import dev.latvian.mods.rhino.ScriptProfiler;
+import dev.latvian.mods.rhino.ScriptTask;
+import dev.latvian.mods.rhino.ScriptableObject;
+
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 @SuppressWarnings("unused")
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class MiscTests {
 	public static final RhinoTest TEST = new RhinoTest("misc");
+	public static final RhinoTest NO_JAVA_STACK_TEST = new RhinoTest("misc").withScopeAction((cx, rootScope) -> ((TestContext) cx).captureJavaStackTraces = false);
 
 	@Test
 	public void enums() {
@@ -20,6 +34,68 @@ public class MiscTests {
 			""");
 	}
 
+	@Test
+	public void profilerSamples() {
+		var profiler = new ScriptProfiler();
+
+		new RhinoTest("misc").withScopeAction((cx, rootScope) -> {
+			profiler.attach(cx);
+			cx.addToScope(rootScope, "profiler", profiler);
+		}).test("profilerSamples", """
+			function leaf() {
+				profiler.sample()
+			}
+			
+			function branch(n) {
+				for (let i = 0; i < n; i++) {
+					leaf()
+				}
+			}
+			
+			branch(2)
+			profiler.sample()
+			console.info(profiler.getFoldedStacks(true).trim())
+			
+			for (let stats of profiler.getFunctionStats()) {
+				console.info(`${stats.name()} ${stats.calls()} ${stats.selfSamples()} ${stats.totalSamples()}`)
+			}
+			""", """
+			<script> (misc/profilerSamples:11);branch (misc/profilerSamples:7);leaf (misc/profilerSamples:2) 2
+			<script> (misc/profilerSamples:12) 1
+			leaf 2 2 2
+			<script> 1 1 3
+			branch 1 0 2
+			""");
+	}
+
+	@Test
+	public void errorStackWithoutJavaStackTrace() {
+		NO_JAVA_STACK_TEST.test("errorStackWithoutJavaStackTrace", """
+			function inner() {
+				return null.x
+			}
+			
+			function outer() {
+				[1].forEach(() => inner())
+			}
+			
+			try {
+				outer()
+			} catch (e) {
+				console.info(e.stack.trim().split('\\n').map(line => line.trim()).join(' | '))
+			}
+			
+			try {
+				throw new RangeError('bad')
+			} catch (e) {
+				console.info(e.name)
+			}
+			""", """
+			at misc/errorStackWithoutJavaStackTrace:2 (inner) | at misc/errorStackWithoutJavaStackTrace:6 (outer) | at misc/errorStackWithoutJavaStackTrace:10
+			RangeError
+			""");
+	}
+
 	@Test
 	public void errorCause() {
 		TEST.test("errorCause", """
@@ -195,4 +271,438 @@ public class MiscTests {
 			console.varargTest("hi", 1, 2, 3);
 			""", "VarArg Ints hi: [1, 2, 3]");
 	}
+
+	@Test
+	public void optimizedIcode() {
+		TEST.test("optimizedIcode", """
+			function concat(n) {
+				let s = '';
+				for (let i = 0; i < n; i++) {
+					s += i;
+				}
+				return s;
+			}
+			function labels() {
+				let count = 0;
+				outer: for (let i = 0; i < 5; i++) {
+					for (let j = 0; j < 5; j++) {
+						if (j == 3) continue outer;
+						if (i === 4) break outer;
+						count++;
+					}
+				}
+				return count;
+			}
+			function tryFinally(o) {
+				let total = 0;
+				let unused = 1;
+				try {
+					for (let i = 0; i < 3; i++) {
+						total += o.value;
+						unused = total;
+						if (i >= 1) throw 'stop';
+					}
+				} catch (e) {
+					total += 100;
+				} finally {
+					total += 1000;
+				}
+				return total;
+			}
+			function incDec() {
+				let a = '1';
+				a++;
+				let b = 5;
+				b--;
+				return [typeof a, a, b].join(',');
+			}
+			console.info(concat(5));
+			console.info(labels());
+			console.info(tryFinally({ value: 2 }));
+			console.info(incDec());
+			""", """
+			01234
+			12
+			1104
+			number,2,4
+			""");
+	}
+
+	@Test
+	public void constantFolding() {
+		TEST.test("constantFolding", """
+			const DEBUG = false;
+			const LIMIT = 3;
+			const NAME = 'abc';
+			let log = [];
+			if (DEBUG) {
+				log.push('debug');
+			} else {
+				log.push('release');
+			}
+			function limit() {
+				return LIMIT * 2;
+			}
+			let o = { LIMIT: 10 };
+			with (o) {
+				log.push(LIMIT);
+			}
+			console.info(log.join(','));
+			console.info([typeof LIMIT, typeof NAME, typeof null, typeof true].join(' '));
+			console.info([1 < 2, 5 % 3, 2 ** 10, 'a' == 'a', 1 === '1', 6 >>> 1, -1 >>> 28].join(' '));
+			console.info([NAME ? 'yes' : 'no', '' ? 'yes' : 'no', limit(), LIMIT + NAME].join(' '));
+			""", """
+			release,10
+			number string object boolean
+			true 2 1024 true false 3 15
+			yes no 6 3abc
+			""");
+	}
+
+	@Test
+	public void scriptTaskSlices() {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		var script = cx.compileString("""
+			function sum(n) {
+				let s = 0;
+				for (let i = 1; i <= n; i++) {
+					try {
+						s += arguments[0] > 0 ? i : 0;
+					} finally {
+						s += 0;
+					}
+				}
+				return s;
+			}
+			
+			let o = { total: 0 };
+			with (o) {
+				total = sum(1000);
+			}
+			`${o.total}`
+			""", "misc/scriptTaskSlices", 1, null);
+
+		var task = new ScriptTask(cx, scope, script);
+		int runs = 0;
+
+		while (!task.run(500L)) {
+			runs++;
+		}
+
+		Assertions.assertTrue(runs > 10, "Task should need several runs, but it needed " + runs);
+		Assertions.assertEquals("500500", task.getResult());
+		Assertions.assertTrue(task.run(500L));
+	}
+
+	@Test
+	public void frameReuse() {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		cx.evaluateString(scope, """
+			function depth(n) {
+				return n === 0 ? 0 : 1 + depth(n - 1)
+			}
+			
+			function thrower(n) {
+				const local = [n, n * 2]
+				if (n === 0) {
+					throw new Error('bottom')
+				}
+				return thrower(n - 1) + local[1]
+			}
+			
+			function unwind() {
+				try {
+					return thrower(8)
+				} catch (e) {
+					return e.message
+				}
+			}
+			
+			function* counter(start) {
+				let x = start
+				const seen = []
+				while (true) {
+					seen.push(x)
+					let step = yield x + ':' + seen.length
+					x += step === undefined ? 1 : step
+				}
+			}
+			
+			function makeCounter() {
+				const base = 100
+				return counter(base)
+			}
+			
+			function adder(k) {
+				return y => y + k
+			}
+			
+			function makeAdders() {
+				const adders = []
+				for (let i = 0; i < 3; i++) {
+					adders.push(adder(i * 10))
+				}
+				return adders
+			}
+			
+			function noise() {
+				return depth(50) + unwind().length + makeAdders()[2](1)
+			}
+			""", "misc/frameReuse", 1, null);
+
+		Assertions.assertEquals("100:1,77,500,bottom,105:2,106:3,1,11,21", cx.evaluateString(scope, """
+			const g = makeCounter()
+			const adders = makeAdders()
+			const results = [g.next().value, noise(), depth(500), unwind()]
+			results.push(g.next(5).value)
+			noise()
+			results.push(g.next().value, adders[0](1), adders[1](1), adders[2](1))
+			results.join()
+			""", "misc/frameReuse", 1, null));
+
+		var task = new ScriptTask(cx, scope, cx.compileString("""
+			let total = 0
+			const tg = makeCounter()
+			for (let i = 0; i < 200; i++) {
+				total += depth(20) + unwind().length + parseInt(tg.next().value)
+			}
+			`${total}`
+			""", "misc/frameReuse", 1, null));
+
+		int runs = 0;
+
+		while (!task.run(200L)) {
+			runs++;
+			Assertions.assertEquals(77.0, ((Number) cx.evaluateString(scope, "noise()", "misc/frameReuse", 1, null)).doubleValue());
+		}
+
+		Assertions.assertTrue(runs > 10, "Task should need several runs, but it needed " + runs);
+		Assertions.assertEquals("45100", task.getResult());
+	}
+
+	@Test
+	public void resourceQuota() {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		var quota = new ResourceQuota().setLimit(ResourceQuota.Resource.STRING_CHARS, 10_000L).setLimit(ResourceQuota.Resource.INSTRUCTIONS, 1_000_000L);
+		cx.setResourceQuota(quota);
+
+		var strings = Assertions.assertThrows(ResourceQuota.ExceededError.class, () -> cx.evaluateString(scope, """
+			let s = 'x';
+			try {
+				for (;;) {
+					s += s;
+				}
+			} catch (e) {
+			}
+			""", "misc/resourceQuota", 1, null));
+
+		Assertions.assertEquals(ResourceQuota.Resource.STRING_CHARS, strings.getResource());
+		Assertions.assertTrue(quota.getUsed(ResourceQuota.Resource.STRING_CHARS) > 10_000L);
+
+		quota.reset();
+		var instructions = Assertions.assertThrows(ResourceQuota.ExceededError.class, () -> cx.evaluateString(scope, """
+			let a = [];
+			for (;;) {
+				a.push({});
+				a.length = 0;
+			}
+			""", "misc/resourceQuota", 1, null));
+
+		Assertions.assertEquals(ResourceQuota.Resource.INSTRUCTIONS, instructions.getResource());
+		Assertions.assertTrue(quota.getUsed(ResourceQuota.Resource.OBJECTS) > 1000L);
+
+		cx.setResourceQuota(null);
+	}
+
+	@Test
+	public void pooledContexts() throws Exception {
+		var factory = new TestContextFactory();
+		var first = factory.call(cx -> cx);
+		Assertions.assertSame(first, factory.call(cx -> cx), "Released context should be reused");
+		Assertions.assertSame(first, factory.call(cx -> factory.enter()), "Pooled context should be bound while running");
+
+		try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			var results = new ArrayList<Future<Object>>();
+
+			for (int i = 0; i < 100; i++) {
+				var source = "let s = 0; for (let i = 0; i < %d; i++) { s += i; } `${s}`".formatted(i);
+				results.add(executor.submit(() -> factory.call(cx -> cx.evaluateString(cx.initStandardObjects(), source, "misc/pooledContexts", 1, null))));
+			}
+
+			for (int i = 0; i < 100; i++) {
+				Assertions.assertEquals(String.valueOf(i * (i - 1) / 2), results.get(i).get());
+			}
+		}
+	}
+
+	@Test
+	public void propertyKeyOrder() {
+		TEST.test("propertyKeyOrder", """
+			const o = {b: 1, 10: 2, a: 3, 2: 4}
+			console.info(Object.keys(o).join())
+			o[1] = 5
+			console.info(Object.keys(o).join())
+			Object.defineProperty(o, 'a', {enumerable: false})
+			const keys = []
+			for (const k in o) keys.push(k)
+			console.info(keys.join())
+			delete o.b
+			Object.keys(o).push('x')
+			console.info(JSON.stringify(o))
+			""", """
+			2,10,b,a
+			1,2,10,b,a
+			1,2,10,b
+			{"1":5,"2":4,"10":2}
+			""");
+	}
+
+	@Test
+	public void cachedIdsShape() throws Exception {
+		var cx = new TestContextFactory().enter();
+		var scope = cx.initStandardObjects();
+		var object = (ScriptableObject) cx.evaluateString(scope, "var o = {a: 1, b: 2}; o", "misc/cachedIdsShape", 1, null);
+		var sharedIds = ScriptableObject.class.getDeclaredMethod("getSharedIds", Context.class);
+		sharedIds.setAccessible(true);
+
+		var ids = sharedIds.invoke(object, cx);
+		cx.evaluateString(scope, "o.a = 3; o.b++", "misc/cachedIdsShape", 1, null);
+		Assertions.assertSame(ids, sharedIds.invoke(object, cx), "Writing values shouldn't invalidate cached ids");
+
+		cx.evaluateString(scope, "o.c = 4", "misc/cachedIdsShape", 1, null);
+		var newIds = (Object[]) sharedIds.invoke(object, cx);
+		Assertions.assertNotSame(ids, newIds, "Adding a key should invalidate cached ids");
+		Assertions.assertEquals(3, newIds.length);
+
+		cx.evaluateString(scope, "Object.defineProperty(o, 'a', {enumerable: false})", "misc/cachedIdsShape", 1, null);
+		Assertions.assertEquals(2, ((Object[]) sharedIds.invoke(object, cx)).length, "Attribute changes should invalidate cached ids");
+	}
+
+	@Test
+	public void sharedScope() throws Exception {
+		var factory = new TestContextFactory();
+		var shared = factory.call(cx -> {
+			var scope = cx.initStandardObjects();
+			cx.evaluateString(scope, "function sum(a) { return a.reduce((x, y) => x + y, 0) }", "misc/sharedScope", 1, null);
+			ScriptableObject.makeScopeThreadSafe(cx, scope);
+			scope.sealObject(cx);
+			return scope;
+		});
+
+		Assertions.assertTrue(((ScriptableObject) ScriptableObject.getArrayPrototype(shared, null)).isThreadSafe());
+
+		try (var executor = Executors.newFixedThreadPool(8)) {
+			var results = new ArrayList<Future<Object>>();
+
+			for (int i = 0; i < 64; i++) {
+				var source = "var list = []; for (let i = 0; i < 1000; i++) { list.push(i %% %d) } Array.prototype.x = 1; `${sum(list)}`".formatted(i + 1);
+				results.add(executor.submit(() -> factory.call(cx -> {
+					var scope = cx.newObject(shared);
+					scope.setPrototype(shared);
+					scope.setParentScope(null);
+					return cx.evaluateString(scope, source, "misc/sharedScope", 1, null);
+				})));
+			}
+
+			for (int i = 0; i < 64; i++) {
+				int sum = 0;
+
+				for (int j = 0; j < 1000; j++) {
+					sum += j % (i + 1);
+				}
+
+				Assertions.assertEquals(String.valueOf(sum), results.get(i).get());
+			}
+		}
+	}
+
+	@Test
+	public void interpreterLoopSize() throws IOException {
+		// HotSpot doesn't JIT compile methods over HugeMethodLimit (8000 bytes) by default
+		int size = -1;
+
+		try (var in = new DataInputStream(MiscTests.class.getResourceAsStream("/dev/latvian/mods/rhino/Interpreter.class"))) {
+			in.skipNBytes(8);
+			var utf8 = new String[in.readUnsignedShort()];
+
+			for (int i = 1; i < utf8.length; i++) {
+				int tag = in.readUnsignedByte();
+
+				switch (tag) {
+					case 1 -> utf8[i] = in.readUTF();
+					case 7, 8, 16, 19, 20 -> in.skipNBytes(2);
+					case 15 -> in.skipNBytes(3);
+					case 3, 4, 9, 10, 11, 12, 17, 18 -> in.skipNBytes(4);
+					case 5, 6 -> {
+						in.skipNBytes(8);
+						i++;
+					}
+					default -> Assertions.fail("Unknown constant pool tag " + tag);
+				}
+			}
+
+			in.skipNBytes(6);
+			in.skipNBytes(2L * in.readUnsignedShort());
+			int fields = in.readUnsignedShort();
+
+			for (int i = 0; i < fields; i++) {
+				in.skipNBytes(6);
+				skipAttributes(in);
+			}
+
+			int methods = in.readUnsignedShort();
+
+			for (int i = 0; i < methods && size == -1; i++) {
+				in.skipNBytes(2);
+				var name = utf8[in.readUnsignedShort()];
+				in.skipNBytes(2);
+				int attributes = in.readUnsignedShort();
+
+				for (int j = 0; j < attributes; j++) {
+					var attribute = utf8[in.readUnsignedShort()];
+					int length = in.readInt();
+
+					if (name.equals("interpretLoop") && attribute.equals("Code")) {
+						in.skipNBytes(4);
+						size = in.readInt();
+						break;
+					}
+
+					in.skipNBytes(length);
+				}
+			}
+		}
+
+		Assertions.assertTrue(size > 0, "interpretLoop not found");
+		Assertions.assertTrue(size < 8000, "interpretLoop is " + size + " bytes, too large to be JIT compiled");
+	}
+
+	private static void skipAttributes(DataInputStream in) throws IOException {
+		int attributes = in.readUnsignedShort();
+
+		for (int i = 0; i < attributes; i++) {
+			in.skipNBytes(2);
+			in.skipNBytes(in.readInt());
+		}
+	}
+
+	@Test
+	public void releasedContextState() {
+		var factory = new TestContextFactory();
+		var profiler = new ScriptProfiler();
+		var cx = factory.acquire();
+		cx.setResourceQuota(new ResourceQuota().setLimit(ResourceQuota.Resource.INSTRUCTIONS, 0L));
+		profiler.attach(cx);
+		factory.release(cx);
+
+		var next = factory.acquire();
+		Assertions.assertSame(cx, next, "Released context should be reused");
+		Assertions.assertNull(next.getResourceQuota());
+		Assertions.assertNull(next.getProfiler());
+		Assertions.assertEquals("3", String.valueOf(next.evaluateString(next.initStandardObjects(), "let s = 0; for (let i = 0; i < 3; i++) { s++ } `${s}`", "misc/releasedContextState", 1, null)));
+		factory.release(next);
+	}
 }
@@ -36,6 +36,21 @@ public class RecordTests {
 			""");
 	}
 
+	@Test
+	public void undefinedComponents() {
+		TEST.test("undefinedComponents", """
+			console.printRecord({str: undefined, sub: undefined})
+			try {
+				console.printRecord({num: undefined})
+			} catch (e) {
+				console.info('undefined num')
+			}
+			""", """
+			TestRecord[num=420, str=Optional.empty, subRecord=null]
+			undefined num
+			""");
+	}
+
 	@Test
 	public void consumer() {
 		TEST.test("object", """
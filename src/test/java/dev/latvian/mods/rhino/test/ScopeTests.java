@@ -28,6 +28,139 @@ public class ScopeTests {
 		}
 	}
 
+	@Test
+	public void closureVariables() {
+		TEST.test("closureVariables", """
+			function counter(start) {
+				let count = start
+				const step = 2
+				return () => {
+					count = count + step
+					return count
+				}
+			}
+			
+			const c = counter(1)
+			c()
+			console.info(c())
+			""", """
+			5
+			"""
+		);
+	}
+
+	@Test
+	public void closureVariablesShadowed() {
+		TEST.test("closureVariablesShadowed", """
+			function outer() {
+				var x = 1
+				var results = []
+				try {
+					throw 2
+				} catch (x) {
+					results.push((() => x)())
+				}
+				with ({x: 3}) {
+					results.push((function () { return x })())
+				}
+				results.push((function () { eval("var x = 4"); return x })())
+				results.push((() => x)())
+				return results.join(",")
+			}
+			
+			console.info(outer())
+			""", """
+			2,3,4,1
+			"""
+		);
+	}
+
+	@Test
+	public void argumentsAndClosures() {
+		TEST.test("argumentsAndClosures", """
+			function doubled(a) {
+				return [a, a + 1].map(x => x * 2).join(",")
+			}
+			
+			function first(a) {
+				a = 3
+				return (() => arguments[0])()
+			}
+			
+			function reassigned() {
+				arguments = 4
+				return arguments
+			}
+			
+			console.info(doubled(1))
+			console.info(first(7))
+			console.info(reassigned())
+			""", """
+			2,4
+			3
+			4
+			"""
+		);
+	}
+
+	@Test
+	public void argumentsFromStrictCode() {
+		TEST.test("argumentsFromStrictCode", """
+			function sloppy() {
+				const length = (() => {
+					'use strict'
+					return arguments.length
+				})()
+				return length + " " + (arguments.callee === sloppy)
+			}
+			
+			function strict() {
+				'use strict'
+				const args = (() => arguments)()
+				try {
+					return args.callee
+				} catch (e) {
+					return e.name
+				}
+			}
+			
+			console.info(sloppy(1, 2))
+			console.info(strict())
+			""", """
+			2 true
+			TypeError
+			"""
+		);
+	}
+
+	@Test
+	public void globalRedefinition() {
+		TEST.test("globalRedefinition", """
+			globalThis.g = 1
+			function read() {
+				try {
+					return g
+				} catch (e) {
+					return e.name
+				}
+			}
+			
+			const results = [read()]
+			g = 2
+			results.push(read())
+			delete globalThis.g
+			results.push(read())
+			globalThis.g = 3
+			results.push(read())
+			Object.defineProperty(globalThis, "g", {get: () => 4, configurable: true})
+			results.push(read())
+			console.info(results.join(","))
+			""", """
+			1,2,ReferenceError,3,4
+			"""
+		);
+	}
+
 	/* Need to figure out what the actual values should be
 	@Test
 	@Order(4)
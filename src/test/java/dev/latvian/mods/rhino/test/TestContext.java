@@ -4,11 +4,17 @@ import dev.latvian.mods.rhino.Context;
 
 public class TestContext extends Context {
 	public String testName = "";
+	public boolean captureJavaStackTraces = true;
 
 	public TestContext(TestContextFactory factory) {
 		super(factory);
 	}
 
+	@Override
+	public boolean captureJavaStackTraces() {
+		return captureJavaStackTraces;
+	}
+
 	@Override
 	public String toString() {
 		return testName;
@@ -1,9 +1,12 @@
 package dev.latvian.mods.rhino.test;
 
+import dev.latvian.mods.rhino.type.TypeInfo;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author ZZZank
@@ -103,4 +106,19 @@ public class TypeConsolidatorTest {
 			%s
 			%s""".formatted(String.class, "dArk", "dArk", "light"));
 	}
+
+	@Test
+	void interned() throws Exception {
+		var loaded = Gener.class.getDeclaredField("loaded");
+		var listOfT = TypeInfo.of(loaded.getGenericType());
+		Assertions.assertSame(listOfT, TypeInfo.of(loaded.getGenericType()));
+		Assertions.assertSame(listOfT, TypeInfo.RAW_LIST.withParams(TypeInfo.of(Gener.class.getTypeParameters()[0])));
+		Assertions.assertSame(listOfT.asArray(), TypeInfo.of(loaded.getGenericType()).asArray());
+
+		// The same interned type has to consolidate differently for every mapping
+		var t = TypeInfo.of(Gener.class.getTypeParameters()[0]);
+		Assertions.assertSame(TypeInfo.RAW_LIST.withParams(TypeInfo.STRING), listOfT.consolidate(Map.of(t, TypeInfo.STRING)));
+		Assertions.assertSame(TypeInfo.RAW_LIST.withParams(TypeInfo.INT), listOfT.consolidate(Map.of(t, TypeInfo.INT)));
+		Assertions.assertSame(listOfT, listOfT.consolidate(Map.of()));
+	}
 }